@@ -34,6 +34,23 @@ class LogStash::Filters::Date < LogStash::Filters::Base
   # This field can be dynamic and include parts of the event using the `%{field}` syntax
   config :timezone, :validate => :string
 
+  # Values that are already timestamps, for example from a json codec or an
+  # earlier filter, are copied to the target without parsing. When their
+  # producer stored local times as if they were UTC, set this to the time zone
+  # of those local times to re-read them in it.
+  config :reinterpret_timezone, :validate => :string
+
+  # Parse the timestamp that starts at this character offset of the source
+  # value, where other text may follow it, like a log line that starts with
+  # its time, without a grok stage to extract the timestamp first. Only date
+  # patterns and `ISO8601` can parse such a timestamp.
+  config :prefix_offset, :validate => :number
+
+  # Store the text that follows the timestamp parsed at `prefix_offset`,
+  # without the whitespace that separates them, in this field. Parses the
+  # timestamp at the start of the value when `prefix_offset` is not set.
+  config :remainder_target, :validate => :string
+
   # Specify a locale to be used for date parsing using either IETF-BCP47 or POSIX language tag.
   # Simple examples are `en`,`en-US` for BCP47 or `en_US` for POSIX.
   #
@@ -61,7 +78,15 @@ class LogStash::Filters::Date < LogStash::Filters::Base
   #   `2011-04-19T03:44:01.103Z`
   # * `UNIX` - will parse *float or int* value expressing unix time in seconds since epoch like 1326149001.132 as well as 1326149001
   # * `UNIX_MS` - will parse **int** value expressing unix time in milliseconds since epoch like 1366125117000
+  # * `UNIX_US` - will parse **int** value expressing unix time in microseconds since epoch like 1366125117000123
+  # * `UNIX_NS` - will parse **int** value expressing unix time in nanoseconds since epoch like 1366125117000123456
+  # * `UNIX_AUTO` - will parse unix time in seconds, milliseconds, microseconds
+  #   or nanoseconds since epoch, telling the unit from the magnitude of the value
   # * `TAI64N` - will parse tai64n time values
+  # * `AUTO` - will detect the format from the values: epochs in seconds,
+  #   milliseconds, microseconds or nanoseconds, `TAI64N`, `ISO8601`, syslog,
+  #   Apache access log and RFC 2822 dates. Once enough values agree on a
+  #   format, it is the only one tried until values stop matching it.
   #
   # For example, if you have a field `logdate`, with a value that looks like
   # `Aug 13 2010 00:03:44`, you would use this configuration:
@@ -76,6 +101,11 @@ class LogStash::Filters::Date < LogStash::Filters::Base
   # syntax `[foo][bar]` to match its value. For more information, please refer to
   # <<logstash-config-field-references>>
   #
+  # When the value of the field is an array, like the samples of a metrics payload,
+  # each element is parsed and the target gets an array of timestamps in the same
+  # order, as do the `additional_targets` in their own encodings. The event fails
+  # to parse if any element does, and an array cannot go to `@timestamp`.
+  #
   # *More details on the syntax*
   #
   # The syntax used for parsing date and time text uses letters to indicate the
@@ -150,8 +180,65 @@ class LogStash::Filters::Date < LogStash::Filters::Base
   # successful match
   config :tag_on_failure, :validate => :array, :default => ["_dateparsefailure"]
 
+  # Also store the matching timestamp in other fields, each with its own
+  # encoding: `timestamp`, `epoch_millis`, `epoch_nanos`, `iso8601`
+  # (UTC text like `2011-04-19T03:44:01.103Z`), `timestamp_minute`,
+  # `timestamp_hour` or `timestamp_day` (truncated to the start of its minute,
+  # hour or day in UTC), or `label:` followed by a date pattern (formatted in
+  # UTC, like `label:YYYY.MM.dd` for a daily index name).
+  # [source,ruby]
+  #     additional_targets => { "[event][created_ms]" => "epoch_millis" }
+  config :additional_targets, :validate => :hash, :default => {}
+
+  TARGET_ENCODINGS = %w(timestamp epoch_millis epoch_nanos iso8601 timestamp_minute timestamp_hour timestamp_day)
+  LABEL_ENCODING_PREFIX = "label:"
+
+  # Parse more fields in the same pass over the events, each with its own
+  # formats and target. Every entry is a hash with a `match` array (field name
+  # first, then formats, like the `match` setting), a `target` field, and
+  # optionally its own `tag_on_failure`, `additional_targets`,
+  # `prefix_offset` and `remainder_target`. The `locale`
+  # and `timezone` settings apply to all entries.
+  # [source,ruby]
+  #     additional_matches => [
+  #       { "match" => [ "[event][start]", "ISO8601" ] "target" => "[event][start]" },
+  #       { "match" => [ "[event][end]", "ISO8601" ] "target" => "[event][end]" }
+  #     ]
+  config :additional_matches, :validate => :array, :default => []
+
+  # Record how late the parsed event times are against the time they are
+  # filtered, the ingest lag, and publish its 50th and 99th percentiles and
+  # its maximum over each interval in the `ingest_lag` plugin metrics, with a
+  # counter of the events dated in the future. Only the `match` field counts,
+  # and each element of an array value counts as one event.
+  config :ingest_lag, :validate => :boolean, :default => false
+
+  # Seconds between two reports of the ingest lag, so that the percentiles
+  # are over enough events
+  INGEST_LAG_REPORT_INTERVAL = 1
+
+  # Load time zones when the pipeline starts, rather than when the parsers
+  # are built and the first events need them: `configured` loads the zones
+  # of the `timezone` and `reinterpret_timezone` settings, or every zone when
+  # the timezone or the values can name any zone, and `all` loads every zone.
+  # Loaded zones stay in memory for as long as Logstash runs.
+  config :preload_timezones, :validate => ["configured", "all"]
+
+  # Warm up the parsers when the pipeline starts, so that the first events
+  # do not pay for cold code. Inputs are made up for each format, and formats
+  # that cannot parse their own output are logged as warnings.
+  config :warmup, :validate => :boolean, :default => false
+
+  # Sample values to also parse during the warmup. Samples that no format
+  # parses are logged as warnings.
+  config :warmup_samples, :validate => :array, :default => []
+
+  # Enough parses of each input for the JIT to compile the parsing code
+  WARMUP_ITERATIONS = 10_000
+
   def register
-    # nothing
+    @datefilter.preload_timezones(@preload_timezones == "all") if @preload_timezones
+    @datefilter.warmup(@warmup_samples, WARMUP_ITERATIONS) if @warmup
   end
 
   def initialize(config = {})
@@ -171,17 +258,57 @@ class LogStash::Filters::Date < LogStash::Filters::Base
 
     source = @match.first
 
-    success_block = Proc.new do |event|
-      filter_matched(event)
-      metric.increment(:matches)
+    # When the only decoration is adding fixed tags, the Java filter adds them
+    # and matched events don't need to go through filter_matched one by one.
+    java_decoration = @add_field.empty? && @remove_field.empty? && @remove_tag.empty? && @add_tag.none? { |tag| tag.include?("%{") }
+
+    batch_block = Proc.new do |matched, failed|
+      matched.each { |event| filter_matched(event) } unless java_decoration
+      metric.increment(:matches, matched.size) unless matched.empty?
+      metric.increment(:failures, failed.size) unless failed.empty?
+      report_failure_samples unless failed.empty?
+      report_ingest_lag if @ingest_lag
+    end
+
+    @datefilter = org.logstash.filters.DateFilter.new(source, @target, @tag_on_failure, batch_block)
+    @datefilter.set_tags_on_success(@add_tag) if java_decoration
+    begin
+      @datefilter.set_reinterpret_timezone(@reinterpret_timezone) if @reinterpret_timezone
+    rescue java.lang.IllegalArgumentException => e
+      raise LogStash::ConfigurationError, I18n.t("logstash.agent.configuration.invalid_plugin_register",
+        :plugin => "filter", :type => "date",
+        :error => "Invalid reinterpret_timezone #{@reinterpret_timezone}: #{e.message}")
     end
-    failure_block = Proc.new do |event|
-      metric.increment(:failures)
+
+    accept_formats(@match[1..-1])
+    add_targets(@additional_targets)
+    set_prefix(@prefix_offset, @remainder_target)
+    @datefilter.track_ingest_lag if @ingest_lag
+
+    @additional_matches.each do |entry|
+      match = entry.is_a?(Hash) ? entry["match"] : nil
+      if !match.is_a?(Array) || match.length < 2 || !entry["target"]
+        raise LogStash::ConfigurationError, I18n.t("logstash.agent.configuration.invalid_plugin_register",
+          :plugin => "filter", :type => "date",
+          :error => "Each additional_matches entry should contain a match with a field name and at least one date format, and a target, current value is #{entry}")
+      end
+      # A single tag is accepted as for the tag_on_failure setting
+      tag_on_failure = Array(entry.fetch("tag_on_failure", @tag_on_failure))
+      unless tag_on_failure.all? { |tag| tag.is_a?(String) }
+        raise LogStash::ConfigurationError, I18n.t("logstash.agent.configuration.invalid_plugin_register",
+          :plugin => "filter", :type => "date",
+          :error => "The tag_on_failure of an additional_matches entry should be a tag or a list of tags, current value is #{entry}")
+      end
+      @datefilter.add_source_field(match.first, entry["target"], tag_on_failure)
+      accept_formats(match[1..-1])
+      add_targets(entry.fetch("additional_targets", {}))
+      set_prefix(entry["prefix_offset"], entry["remainder_target"])
     end
 
-    @datefilter = org.logstash.filters.DateFilter.new(source, @target, @tag_on_failure, success_block, failure_block)
+  end # def initialize
 
-    @match[1..-1].map do |format|
+  def accept_formats(formats)
+    formats.each do |format|
       @datefilter.accept_filter_config(format, @locale, @timezone)
 
       # Offer a fallback parser such that if the default system Locale is non-english and that no locale is set,
@@ -190,8 +317,65 @@ class LogStash::Filters::Date < LogStash::Filters::Base
         @datefilter.accept_filter_config(format, "en-US", @timezone)
       end
     end
+  end
+  private :accept_formats
 
-  end # def initialize
+  def add_targets(targets)
+    targets.each do |field, encoding|
+      valid = TARGET_ENCODINGS.include?(encoding) || (encoding.is_a?(String) && encoding.start_with?(LABEL_ENCODING_PREFIX))
+      if !valid || (field == LogStash::Event::TIMESTAMP && encoding != "timestamp")
+        raise LogStash::ConfigurationError, I18n.t("logstash.agent.configuration.invalid_plugin_register",
+          :plugin => "filter", :type => "date",
+          :error => "Invalid encoding #{encoding} for additional target #{field}, it should be one of #{TARGET_ENCODINGS} or #{LABEL_ENCODING_PREFIX} followed by a date pattern, and @timestamp can only hold a timestamp")
+      end
+      begin
+        @datefilter.add_target(field, encoding)
+      rescue java.lang.IllegalArgumentException => e
+        raise LogStash::ConfigurationError, I18n.t("logstash.agent.configuration.invalid_plugin_register",
+          :plugin => "filter", :type => "date",
+          :error => "Invalid encoding #{encoding} for additional target #{field}: #{e.message}")
+      end
+    end
+  end
+  private :add_targets
+
+  def set_prefix(offset, remainder_target)
+    return if offset.nil? && remainder_target.nil?
+    @datefilter.set_prefix((offset || 0).to_i, remainder_target)
+  rescue java.lang.IllegalArgumentException => e
+    raise LogStash::ConfigurationError, I18n.t("logstash.agent.configuration.invalid_plugin_register",
+      :plugin => "filter", :type => "date",
+      :error => "Invalid prefix_offset #{offset} or remainder_target #{remainder_target}: #{e.message}")
+  end
+  private :set_prefix
+
+  # Publishes the failures the Java filter captured since the last report as
+  # gauges, so that the node stats API shows which values fail and why.
+  def report_failure_samples
+    captured = @datefilter.captured_failures
+    return if captured == @reported_failures
+    @reported_failures = captured
+    samples_metric = metric.namespace(:failure_samples)
+    samples_metric.gauge(:captured, captured)
+    @datefilter.failure_samples.each_with_index do |sample, index|
+      samples_metric.gauge(:"#{index}", sample)
+    end
+  end
+  private :report_failure_samples
+
+  # Publishes the ingest lag of the events filtered since the last report.
+  # Of the worker threads that report at the same time, only one gets it.
+  def report_ingest_lag
+    lag = @datefilter.drain_ingest_lag(INGEST_LAG_REPORT_INTERVAL * 1000)
+    return if lag.nil?
+    lag_metric = metric.namespace(:ingest_lag)
+    lag_metric.increment(:future_dated, lag["future_dated"]) if lag["future_dated"] > 0
+    return if lag["events"] == 0
+    lag_metric.gauge(:p50_millis, lag["p50_millis"])
+    lag_metric.gauge(:p99_millis, lag["p99_millis"])
+    lag_metric.gauge(:max_millis, lag["max_millis"])
+  end
+  private :report_ingest_lag
 
   def multi_filter(events)
     @datefilter.receive(events)
@@ -230,6 +230,53 @@ RUBY_ENGINE == "jruby" and describe LogStash::Filters::Date do
     end # times.each
   end
 
+  describe "parsing with UNIX_AUTO" do
+    config <<-CONFIG
+      filter {
+        date {
+          match => [ "mydate", "UNIX_AUTO" ]
+          additional_targets => { "mydate_nanos" => "epoch_nanos" }
+        }
+      }
+    CONFIG
+
+    times = {
+      "1478207457" => 1478207457000000000,
+      "1478207457.123456" => 1478207457123456000,
+      "1478207457123" => 1478207457123000000,
+      "1478207457123456" => 1478207457123456000,
+      "1478207457123456789" => 1478207457123456789,
+      1478207457 => 1478207457000000000,
+      1478207457123456789 => 1478207457123456789,
+    }
+    times.each do |input, output|
+      sample({"mydate" => input}) do
+        insist { subject.get("mydate_nanos") } == output
+        insist { subject.get("@timestamp").to_i } == 1478207457
+      end
+    end # times.each
+  end
+
+  describe "parsing with UNIX_US and UNIX_NS" do
+    config <<-CONFIG
+      filter {
+        date {
+          match => [ "mydate", "UNIX_US" ]
+          target => "micros"
+        }
+        date {
+          match => [ "mydate", "UNIX_NS" ]
+          target => "nanos"
+        }
+      }
+    CONFIG
+
+    sample({"mydate" => "1478207457123456"}) do
+      insist { subject.get("micros").to_iso8601 } == "2016-11-03T21:10:57.123456Z"
+      insist { subject.get("nanos").to_iso8601 } == "1970-01-18T02:36:47.457123456Z"
+    end
+  end
+
   describe "failed parses should not cause a failure (LOGSTASH-641)" do
     config <<-'CONFIG'
       input {
@@ -259,6 +306,32 @@ RUBY_ENGINE == "jruby" and describe LogStash::Filters::Date do
     end
   end
 
+  describe "parsing with AUTO" do
+    config <<-CONFIG
+      filter {
+        date {
+          match => [ "mydate", "AUTO" ]
+          timezone => "UTC"
+        }
+      }
+    CONFIG
+
+    times = {
+      "2013-04-21T00:00:00.123Z"        => "2013-04-21T00:00:00.123Z",
+      "1366502400"                      => "2013-04-21T00:00:00.000Z",
+      "1366502400123"                   => "2013-04-21T00:00:00.123Z",
+      "21/Apr/2013:02:00:00 +0200"      => "2013-04-21T00:00:00.000Z",
+      "Sun, 21 Apr 2013 00:00:00 GMT"   => "2013-04-21T00:00:00.000Z",
+      1366502400                        => "2013-04-21T00:00:00.000Z",
+    }
+    times.each do |input, output|
+      sample("mydate" => input) do
+        insist { subject.get("mydate") } == input
+        insist { subject.get("@timestamp").time } == Time.iso8601(output).utc
+      end
+    end # times.each
+  end
+
   describe "TAI64N support" do
     config <<-'CONFIG'
       filter {
@@ -384,6 +457,97 @@ RUBY_ENGINE == "jruby" and describe LogStash::Filters::Date do
     end
   end
 
+  describe "parsing several fields with additional_matches" do
+    config <<-CONFIG
+      filter {
+        date {
+          match => [ "[event][created]", "ISO8601" ]
+          target => "[event][created]"
+          additional_matches => [
+            { "match" => [ "[event][start]", "yyyy/MM/dd" ] "target" => "[event][start]" },
+            { "match" => [ "[event][end]", "UNIX_MS" ] "target" => "[event][end]" "tag_on_failure" => ["_end_failed"] }
+          ]
+          timezone => "UTC"
+        }
+      }
+    CONFIG
+
+    sample({"event" => { "created" => "2013-04-21T00:00:00.000Z", "start" => "2013/04/20", "end" => 1366502400000 }}) do
+      insist { subject.get("[event][created]").time } == Time.iso8601("2013-04-21T00:00:00.000Z").utc
+      insist { subject.get("[event][start]").time } == Time.iso8601("2013-04-20T00:00:00.000Z").utc
+      insist { subject.get("[event][end]").time } == Time.iso8601("2013-04-21T00:00:00.000Z").utc
+      insist { subject.get("tags") }.nil?
+    end
+
+    sample({"event" => { "created" => "2013-04-21T00:00:00.000Z", "end" => "not a date" }}) do
+      insist { subject.get("[event][created]").time } == Time.iso8601("2013-04-21T00:00:00.000Z").utc
+      insist { subject.get("tags") } == ["_end_failed"]
+    end
+  end
+
+  context "when giving an invalid additional_matches config" do
+    let(:options) { { "match" => ["mydate", "ISO8601"], "additional_matches" => [{ "match" => ["otherdate"] }] } }
+    it "raises a configuration error" do
+      expect { described_class.new(options) }.to raise_error(LogStash::ConfigurationError)
+    end
+  end
+
+  context "when giving a single tag_on_failure in additional_matches" do
+    subject { described_class.new("match" => ["mydate", "ISO8601"], "additional_matches" => [{ "match" => ["otherdate", "ISO8601"], "target" => "other", "tag_on_failure" => "_other_failed" }]) }
+
+    it "tags the failures with it" do
+      subject.register
+      event = LogStash::Event.new("mydate" => "2013-04-21T00:00:00.000Z", "otherdate" => "not a date")
+      subject.filter(event)
+      insist { event.get("tags") } == ["_other_failed"]
+    end
+  end
+
+  context "when giving an invalid tag_on_failure in additional_matches" do
+    let(:options) { { "match" => ["mydate", "ISO8601"], "additional_matches" => [{ "match" => ["otherdate", "ISO8601"], "target" => "other", "tag_on_failure" => { "a" => "b" } }] } }
+    it "raises a configuration error" do
+      expect { described_class.new(options) }.to raise_error(LogStash::ConfigurationError)
+    end
+  end
+
+  describe "warming up on register" do
+    subject { described_class.new("match" => [ "message", "yyyy-MM-dd", "UNIX" ], "timezone" => "UTC", "warmup" => true, "warmup_samples" => ["2013-04-21"]) }
+
+    it "still parses dates afterwards" do
+      subject.register
+      event = LogStash::Event.new("message" => "2013-04-21")
+      subject.filter(event)
+      insist { event.get("@timestamp").time } == Time.iso8601("2013-04-21T00:00:00.000Z").utc
+    end
+  end
+
+  describe "storing additional targets" do
+    config <<-CONFIG
+      filter {
+        date {
+          match => [ "mydate", "ISO8601" ]
+          additional_targets => {
+            "millis" => "epoch_millis"
+            "text" => "iso8601"
+          }
+        }
+      }
+    CONFIG
+
+    sample("mydate" => "2013-04-21T02:00:00.123+02:00") do
+      insist { subject.get("@timestamp").time } == Time.iso8601("2013-04-21T00:00:00.123Z").utc
+      insist { subject.get("millis") } == 1366502400123
+      insist { subject.get("text") } == "2013-04-21T00:00:00.123Z"
+    end
+  end
+
+  context "when giving an invalid additional_targets config" do
+    let(:options) { { "match" => ["mydate", "ISO8601"], "additional_targets" => { "millis" => "epoch_seconds" } } }
+    it "raises a configuration error" do
+      expect { described_class.new(options) }.to raise_error(LogStash::ConfigurationError)
+    end
+  end
+
   describe "parsing with timezone parameter" do
     config <<-CONFIG
       filter {
@@ -805,17 +969,165 @@ RUBY_ENGINE == "jruby" and describe LogStash::Filters::Date do
     context "when date parses a date correctly" do
       let(:event) { ::LogStash::Event.new("message" => "1999") }
       it "increases the matches counter" do
-        expect(subject.metric).to receive(:increment).with(:matches)
+        expect(subject.metric).to receive(:increment).with(:matches, 1)
         subject.filter(event)
       end
     end
 
+    context "when date parses a batch of events" do
+      let(:events) { [ "1999", "2000", "not really a year" ].map { |message| ::LogStash::Event.new("message" => message) } }
+      it "increases the counters once by the number of events" do
+        expect(subject.metric).to receive(:increment).with(:matches, 2).once
+        expect(subject.metric).to receive(:increment).with(:failures, 1).once
+        subject.multi_filter(events)
+      end
+    end
+
     context "when date parses a date correctly" do
       let(:event) { ::LogStash::Event.new("message" => "not really a year") }
       it "increases the matches counter" do
-        expect(subject.metric).to receive(:increment).with(:failures)
+        expect(subject.metric).to receive(:increment).with(:failures, 1)
         subject.filter(event)
       end
+
+      it "publishes the failure as a sample" do
+        samples_metric = double("failure_samples").as_null_object
+        expect(subject.metric).to receive(:namespace).with(:failure_samples).and_return(samples_metric)
+        expect(samples_metric).to receive(:gauge).with(:captured, 1)
+        expect(samples_metric).to receive(:gauge).with(:"0", /field=message value="not really a year" formats=\[yyyy\]/)
+        subject.filter(event)
+      end
+    end
+  end
+
+  describe "time bucket targets" do
+    subject do
+      described_class.new("match" => [ "message", "ISO8601" ],
+                          "additional_targets" => { "hour" => "timestamp_hour", "[@metadata][index_day]" => "label:YYYY.MM.dd" })
+    end
+
+    it "stores the truncated timestamp and the label of its day" do
+      event = ::LogStash::Event.new("message" => "2016-11-03T21:10:57.123Z")
+      subject.filter(event)
+      expect(event.get("hour").to_iso8601).to eq("2016-11-03T21:00:00.000Z")
+      expect(event.get("[@metadata][index_day]")).to eq("2016.11.03")
+    end
+
+    it "rejects invalid patterns" do
+      expect { described_class.new("match" => [ "message", "ISO8601" ], "additional_targets" => { "day" => "label:YYYY.MM.dd q" }) }.to raise_error(LogStash::ConfigurationError)
+    end
+  end
+
+  describe "array values" do
+    subject { described_class.new("match" => [ "samples", "UNIX_MS", "ISO8601" ], "target" => "times", "additional_targets" => { "times_ms" => "epoch_millis" }) }
+
+    it "parses every element in order" do
+      event = ::LogStash::Event.new("samples" => [ 1478207457123, 1478207458123, "2016-11-03T21:10:59.123Z" ])
+      subject.filter(event)
+      expect(event.get("times").map(&:to_iso8601)).to eq([ "2016-11-03T21:10:57.123Z", "2016-11-03T21:10:58.123Z", "2016-11-03T21:10:59.123Z" ])
+      expect(event.get("times_ms")).to eq([ 1478207457123, 1478207458123, 1478207459123 ])
+      expect(event.get("tags")).to be_nil
+    end
+
+    it "fails when an element does not parse" do
+      event = ::LogStash::Event.new("samples" => [ 1478207457123, "not a date" ])
+      subject.filter(event)
+      expect(event.get("times")).to be_nil
+      expect(event.get("tags")).to eq(["_dateparsefailure"])
+    end
+  end
+
+  describe "preload_timezones" do
+    it "loads the configured zones when registering" do
+      subject = described_class.new("match" => [ "message", "yyyy-MM-dd HH:mm:ss" ], "timezone" => "Europe/Paris", "preload_timezones" => "configured")
+      subject.register
+      event = ::LogStash::Event.new("message" => "2016-11-03 21:10:57")
+      subject.filter(event)
+      expect(event.get("@timestamp").to_iso8601).to eq("2016-11-03T20:10:57.000Z")
+    end
+
+    it "rejects other values" do
+      expect { described_class.new("match" => [ "message", "ISO8601" ], "preload_timezones" => "some") }.to raise_error(LogStash::ConfigurationError)
+    end
+  end
+
+  describe "ingest lag" do
+    subject { described_class.new("match" => [ "message", "UNIX_MS" ], "ingest_lag" => true) }
+    let(:lag_metric) { double("ingest_lag").as_null_object }
+
+    it "publishes the lag and counts the events from the future" do
+      now = (Time.now.to_f * 1000).to_i
+      events = [ now - 60_000, now + 3_600_000 ].map { |millis| ::LogStash::Event.new("message" => millis) }
+      expect(subject.metric).to receive(:namespace).with(:ingest_lag).and_return(lag_metric)
+      expect(lag_metric).to receive(:increment).with(:future_dated, 1)
+      expect(lag_metric).to receive(:gauge).with(:p50_millis, (60_000...70_000))
+      expect(lag_metric).to receive(:gauge).with(:p99_millis, (60_000...70_000))
+      expect(lag_metric).to receive(:gauge).with(:max_millis, (60_000...70_000))
+      subject.multi_filter(events)
+    end
+  end
+
+  describe "values that are already timestamps" do
+    let(:event) { ::LogStash::Event.new("happened_at" => LogStash::Timestamp.at(1478203857, 123456)) }
+
+    context "without reinterpret_timezone" do
+      subject { described_class.new("match" => [ "happened_at", "ISO8601" ], "target" => "result") }
+
+      it "copies them to the target" do
+        subject.filter(event)
+        expect(event.get("result")).to eq(event.get("happened_at"))
+        expect(event.get("tags")).to be_nil
+      end
+    end
+
+    context "with reinterpret_timezone" do
+      subject { described_class.new("match" => [ "happened_at", "ISO8601" ], "target" => "result", "reinterpret_timezone" => "Europe/Paris") }
+
+      it "re-reads their wall-clock time in the zone" do
+        subject.filter(event)
+        expect(event.get("result").to_iso8601).to eq("2016-11-03T19:10:57.123Z")
+      end
+    end
+
+    it "rejects an unknown zone" do
+      expect { described_class.new("match" => [ "happened_at", "ISO8601" ], "reinterpret_timezone" => "Mars/Olympus") }.to raise_error(LogStash::ConfigurationError)
+    end
+  end
+
+  describe "timestamps followed by other text" do
+    subject { described_class.new("match" => [ "message", "ISO8601", "dd/MMM/yyyy:HH:mm:ss Z" ], "prefix_offset" => 0, "remainder_target" => "rest", "locale" => "en") }
+
+    it "parses the timestamp and keeps the rest of the line" do
+      event = ::LogStash::Event.new("message" => "2016-11-03T21:10:57.123Z GET /index.html 200")
+      subject.filter(event)
+      expect(event.get("@timestamp").to_iso8601).to eq("2016-11-03T21:10:57.123Z")
+      expect(event.get("rest")).to eq("GET /index.html 200")
+      expect(event.get("message")).to eq("2016-11-03T21:10:57.123Z GET /index.html 200")
+    end
+
+    it "tries the formats in order" do
+      event = ::LogStash::Event.new("message" => "03/Nov/2016:21:10:57 +0100 GET /")
+      subject.filter(event)
+      expect(event.get("@timestamp").to_iso8601).to eq("2016-11-03T20:10:57.000Z")
+      expect(event.get("rest")).to eq("GET /")
+    end
+
+    it "tags lines that do not start with a timestamp" do
+      event = ::LogStash::Event.new("message" => "GET / 2016-11-03T21:10:57.123Z")
+      subject.filter(event)
+      expect(event.get("tags")).to eq(["_dateparsefailure"])
+      expect(event.get("rest")).to be_nil
+    end
+
+    it "parses at an offset" do
+      filter = described_class.new("match" => [ "message", "dd/MMM/yyyy:HH:mm:ss Z" ], "prefix_offset" => 1, "locale" => "en")
+      event = ::LogStash::Event.new("message" => "[03/Nov/2016:21:10:57 +0100] GET /")
+      filter.filter(event)
+      expect(event.get("@timestamp").to_iso8601).to eq("2016-11-03T20:10:57.000Z")
+    end
+
+    it "rejects formats that only parse whole values" do
+      expect { described_class.new("match" => [ "message", "UNIX" ], "prefix_offset" => 0) }.to raise_error(LogStash::ConfigurationError)
     end
   end
 
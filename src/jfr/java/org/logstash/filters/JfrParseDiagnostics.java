@@ -0,0 +1,160 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import org.logstash.filters.parser.CacheStatistics;
+
+/**
+ * Java Flight Recorder events of the date filter: parses slower than a threshold, a sample of the failures of
+ * each format, and periodic statistics of the parser caches. Loaded by {@link ParseDiagnostics} on Java 11 and
+ * later only, as this source set is built apart from the Java 8 one.
+ */
+final class JfrParseDiagnostics implements ParseDiagnostics {
+  // One failure out of this many is recorded
+  private static final int FAILURE_SAMPLING = 64;
+  private static final int MAX_VALUE_LENGTH = 256;
+
+  @Name("org.logstash.filters.date.SlowParse")
+  @Label("Slow Date Parse")
+  @Description("Parse of a field by a date filter that took longer than the threshold")
+  @Category({ "Logstash", "Date Filter" })
+  @Threshold("1 ms")
+  @StackTrace(false)
+  static final class SlowParse extends Event {
+    @Label("Field")
+    String field;
+
+    @Label("Result")
+    String result;
+  }
+
+  @Name("org.logstash.filters.date.ParseFailure")
+  @Label("Date Parse Failure")
+  @Description("A sample of the values that a date format failed to parse")
+  @Category({ "Logstash", "Date Filter" })
+  @StackTrace(false)
+  static final class ParseFailure extends Event {
+    @Label("Field")
+    String field;
+
+    @Label("Format")
+    String format;
+
+    @Label("Value")
+    String value;
+
+    @Label("Message")
+    String message;
+  }
+
+  @Name("org.logstash.filters.date.CacheStatistics")
+  @Label("Date Parser Cache Statistics")
+  @Category({ "Logstash", "Date Filter" })
+  @Period("10 s")
+  @StackTrace(false)
+  static final class CacheStatisticsEvent extends Event {
+    @Label("Shared Parsers")
+    int sharedParsers;
+
+    @Label("Zone Cache Hits")
+    long zoneCacheHits;
+
+    @Label("Zone Cache Misses")
+    long zoneCacheMisses;
+  }
+
+  private final EventType slowParseType;
+  private final EventType failureType;
+  // Plain on purpose: the workers race on it, and a lost update only shifts which failure is sampled, which is
+  // cheaper than contending on an atomic for every failure
+  private int failures;
+
+  JfrParseDiagnostics() {
+    FlightRecorder.register(SlowParse.class);
+    FlightRecorder.register(ParseFailure.class);
+    FlightRecorder.addPeriodicEvent(CacheStatisticsEvent.class, () -> {
+      CacheStatisticsEvent event = new CacheStatisticsEvent();
+      event.sharedParsers = CacheStatistics.sharedParsers();
+      event.zoneCacheHits = CacheStatistics.zoneCacheHits();
+      event.zoneCacheMisses = CacheStatistics.zoneCacheMisses();
+      event.commit();
+    });
+    slowParseType = EventType.getEventType(SlowParse.class);
+    failureType = EventType.getEventType(ParseFailure.class);
+    // The zone cache is counted only while a recording takes its statistics
+    EventType cacheStatisticsType = EventType.getEventType(CacheStatisticsEvent.class);
+    FlightRecorder.addListener(new FlightRecorderListener() {
+      @Override
+      public void recordingStateChanged(Recording recording) {
+        CacheStatistics.countZoneCache(cacheStatisticsType.isEnabled());
+      }
+    });
+    CacheStatistics.countZoneCache(cacheStatisticsType.isEnabled());
+  }
+
+  @Override
+  public Object startParse() {
+    if (!slowParseType.isEnabled()) {
+      return null;
+    }
+    SlowParse event = new SlowParse();
+    event.begin();
+    return event;
+  }
+
+  @Override
+  public void endParse(Object token, String field, ParseExecutionResult result) {
+    SlowParse event = (SlowParse) token;
+    event.end();
+    if (event.shouldCommit()) {
+      event.field = field;
+      event.result = result.name();
+      event.commit();
+    }
+  }
+
+  @Override
+  public void failure(String field, String format, Object value, Exception e) {
+    if (!failureType.isEnabled() || failures++ % FAILURE_SAMPLING != 0) {
+      return;
+    }
+    ParseFailure event = new ParseFailure();
+    if (event.shouldCommit()) {
+      String text = String.valueOf(value);
+      event.field = field;
+      event.format = format;
+      event.value = text.length() > MAX_VALUE_LENGTH ? text.substring(0, MAX_VALUE_LENGTH) : text;
+      event.message = e.getMessage();
+      event.commit();
+    }
+  }
+}
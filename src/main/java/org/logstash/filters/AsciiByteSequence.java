@@ -0,0 +1,94 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters;
+
+import org.jruby.RubyString;
+import org.jruby.util.ByteList;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A read-only view over the bytes of an ASCII-only {@link RubyString}, so that text parsers can
+ * read event values without first decoding them into a {@link String}. Parsers that still need
+ * a {@link String} share the one decoded on the first call to {@link #toString}.
+ */
+final class AsciiByteSequence implements CharSequence {
+  private final byte[] bytes;
+  private final int offset;
+  private final int length;
+  // Values are parsed by one thread at a time
+  private String string;
+
+  private AsciiByteSequence(byte[] bytes, int offset, int length) {
+    this.bytes = bytes;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  /**
+   * Returns a view over the string's bytes when they are all ASCII, and a decoded {@link String}
+   * otherwise.
+   */
+  static CharSequence of(RubyString value) {
+    ByteList byteList = value.getByteList();
+    byte[] bytes = byteList.unsafeBytes();
+    int begin = byteList.begin();
+    int length = byteList.realSize();
+
+    if (!byteList.getEncoding().isAsciiCompatible()) {
+      return value.toString();
+    }
+    for (int i = begin; i < begin + length; i++) {
+      if (bytes[i] < 0) {
+        return value.toString();
+      }
+    }
+    return new AsciiByteSequence(bytes, begin, length);
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (index < 0 || index >= length) {
+      throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+    }
+    return (char) bytes[offset + index];
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    if (start < 0 || end > length || start > end) {
+      throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+    }
+    return new AsciiByteSequence(bytes, offset + start, end - start);
+  }
+
+  @Override
+  public String toString() {
+    if (string == null) {
+      string = new String(bytes, offset, length, StandardCharsets.US_ASCII);
+    }
+    return string;
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters;
+
+import org.logstash.Event;
+import org.logstash.Timestamp;
+import org.logstash.filters.parser.AutoDetectParser;
+import org.logstash.filters.parser.TimestampParser;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * Executes a parser that accepts both text, possibly with a timezone taken from the event, and numbers.
+ */
+final class AutoParserExecutor implements ParserExecutor {
+  private final TextParserExecutor text;
+  private final AutoDetectParser parser;
+
+  public AutoParserExecutor(AutoDetectParser parser, String timeZone) {
+    this.text = new TextParserExecutor(parser, timeZone);
+    this.parser = parser;
+  }
+
+  public Timestamp execute(Object input, Event event) throws IOException {
+    if (input instanceof CharSequence) {
+      return text.execute(input, event);
+    } else if (input instanceof Long) {
+      return new Timestamp(parser.parse((Long) input).getMillis());
+    } else if (input instanceof Integer) {
+      return new Timestamp(parser.parse(((Integer) input).longValue()).getMillis());
+    } else if (input instanceof Double) {
+      return new Timestamp(parser.parse((Double) input).getMillis());
+    } else if (input instanceof BigDecimal) {
+      return new Timestamp(parser.parse((BigDecimal) input).getMillis());
+    }
+    throw new IllegalArgumentException("Cannot parse date for value of type " + input.getClass().getName());
+  }
+
+  public TimestampParser getParser() {
+    return text.getParser();
+  }
+
+  @Override
+  public void prepareWarmupEvent(Event event) {
+    text.prepareWarmupEvent(event);
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters;
+
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.logstash.Event;
+import org.logstash.FieldReference;
+import org.logstash.Timestamp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores the timestamp formatted with a Joda pattern in UTC, like the {@code %{+YYYY.MM.dd}} of an index name.
+ * The label only changes from one bucket of time to the next, a day for {@code YYYY.MM.dd}, so each thread keeps
+ * the labels of the last few buckets it formatted, and most events get theirs without formatting.
+ */
+final class BucketLabelSetter implements ResultSetter {
+  private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+  private static final int CACHED_BUCKETS = 4;
+
+  private static final class Labels {
+    final long[] buckets = new long[CACHED_BUCKETS];
+    final String[] labels = new String[CACHED_BUCKETS];
+  }
+
+  private final FieldReference target;
+  private final DateTimeFormatter formatter;
+  private final long bucketMillis;
+  private final ThreadLocal<Labels> labels = ThreadLocal.withInitial(Labels::new);
+
+  BucketLabelSetter(String target, String pattern) {
+    this.target = FieldReference.from(target);
+    this.formatter = DateTimeFormat.forPattern(pattern).withZoneUTC();
+    this.bucketMillis = bucketMillis(pattern);
+  }
+
+  /*
+   * The longest time over which the pattern formats the same label: the unit of its smallest field, up to a day,
+   * which every field larger than a day stays the same over in UTC. Letters that are not known to stay the same over
+   * a day or less get 1 millisecond, so that the label is formatted for every timestamp rather than ever cached.
+   */
+  static long bucketMillis(String pattern) {
+    long bucket = DAY_MILLIS;
+    boolean quoted = false;
+    for (int i = 0; i < pattern.length(); i++) {
+      char c = pattern.charAt(i);
+      if (c == '\'') {
+        quoted = !quoted;
+      } else if (!quoted) {
+        switch (c) {
+          case 'S':
+            return 1;
+          case 's':
+            bucket = Math.min(bucket, TimeUnit.SECONDS.toMillis(1));
+            break;
+          case 'm':
+            bucket = Math.min(bucket, TimeUnit.MINUTES.toMillis(1));
+            break;
+          case 'H':
+          case 'k':
+          case 'h':
+          case 'K':
+            bucket = Math.min(bucket, TimeUnit.HOURS.toMillis(1));
+            break;
+          case 'a':
+            bucket = Math.min(bucket, TimeUnit.HOURS.toMillis(12));
+            break;
+          // Era, century, year, week, day, month and zone fields
+          case 'G':
+          case 'C':
+          case 'Y':
+          case 'x':
+          case 'w':
+          case 'e':
+          case 'E':
+          case 'y':
+          case 'D':
+          case 'M':
+          case 'd':
+          case 'z':
+          case 'Z':
+            break;
+          default:
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+              return 1;
+            }
+            break;
+        }
+      }
+    }
+    return bucket;
+  }
+
+  public void set(Event event, Timestamp timestamp) {
+    event.setField(this.target, label(labels.get(), timestamp));
+  }
+
+  public void setAll(Event event, List<Timestamp> timestamps) {
+    Labels cache = labels.get();
+    List<String> values = new ArrayList<>(timestamps.size());
+    for (Timestamp timestamp : timestamps) {
+      values.add(label(cache, timestamp));
+    }
+    event.setField(this.target, values);
+  }
+
+  private String label(Labels cache, Timestamp timestamp) {
+    long bucket = Math.floorDiv(timestamp.toEpochMilli(), bucketMillis);
+    int slot = (int) (bucket & (CACHED_BUCKETS - 1));
+    String label = cache.labels[slot];
+    if (label == null || cache.buckets[slot] != bucket) {
+      label = formatter.print(bucket * bucketMillis);
+      cache.buckets[slot] = bucket;
+      cache.labels[slot] = label;
+    }
+    return label;
+  }
+}
@@ -21,97 +21,341 @@ package org.logstash.filters;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.joda.time.Instant;
+import org.joda.time.DateTimeZone;
 import org.logstash.Event;
 import org.logstash.ext.JrubyEventExtLibrary.RubyEvent;
-import org.logstash.filters.parser.CasualISO8601Parser;
-import org.logstash.filters.parser.JodaParser;
+import org.logstash.filters.parser.AutoDetectParser;
+import org.logstash.filters.parser.EpochNanosParser;
 import org.logstash.filters.parser.TimestampParser;
 import org.logstash.filters.parser.TimestampParserFactory;
+import org.logstash.filters.parser.UnixEpochParser;
+import org.logstash.filters.parser.UnixMillisEpochParser;
+import org.logstash.filters.parser.ZonePreload;
 
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class DateFilter {
   private static Logger logger = LogManager.getLogger(DateFilter.class);
-  private final String sourceField;
-  private final String[] tagOnFailure;
+  private static final ParseDiagnostics diagnostics = ParseDiagnostics.INSTANCE;
+  private static final long NEVER_DRAINED = Long.MIN_VALUE;
   private RubyResultHandler successHandler;
   private RubyResultHandler failureHandler;
-  private final List<ParserExecutor> executors = new ArrayList<>();
-  private final ResultSetter setter;
+  private RubyBatchResultHandler batchHandler;
+  private String[] tagsOnSuccess = new String[0];
+  private final List<FieldMatch> matches = new ArrayList<>();
+  private final FailureSamples failureSamples = new FailureSamples();
+  private boolean dynamicTimezone;
+  // The fixed timezones of the config, and whether values may carry any zone
+  private final Set<String> timezones = new HashSet<>();
+  private boolean anyZone;
+  private DateTimeZone reinterpretZone;
+  // Null until a field tracks its ingest lag
+  private LagHistogram ingestLag;
+  // System.nanoTime() of the last drainIngestLag(long) that took the lag
+  private final AtomicLong ingestLagDrainedAt = new AtomicLong(NEVER_DRAINED);
 
   public interface RubyResultHandler {
     void handle(RubyEvent event);
   }
 
+  /**
+   * Called once per batch, with the events that were parsed and the events that failed to parse.
+   */
+  public interface RubyBatchResultHandler {
+    void handle(List<RubyEvent> matched, List<RubyEvent> failed);
+  }
+
   public DateFilter(String sourceField, String targetField, List<String> tagOnFailure, RubyResultHandler successHandler, RubyResultHandler failureHandler) {
     this(sourceField, targetField, tagOnFailure);
     this.successHandler = successHandler;
     this.failureHandler = failureHandler;
   }
 
+  public DateFilter(String sourceField, String targetField, List<String> tagOnFailure, RubyBatchResultHandler batchHandler) {
+    this(sourceField, targetField, tagOnFailure);
+    this.batchHandler = batchHandler;
+  }
+
   public DateFilter(String sourceField, String targetField, List<String> tagOnFailure) {
-    this.sourceField = sourceField;
-    this.tagOnFailure = tagOnFailure.toArray(new String[0]);
-    if (targetField.equals("@timestamp")) {
-      this.setter = new TimestampSetter();
-    } else {
-      this.setter = new FieldSetter(targetField);
+    addSourceField(sourceField, targetField, tagOnFailure);
+  }
+
+  /**
+   * Adds another field to be parsed in the same pass over each batch. The formats given to
+   * subsequent {@link #acceptFilterConfig} calls apply to this field.
+   */
+  public void addSourceField(String sourceField, String targetField, List<String> tagOnFailure) {
+    FieldMatch match = new FieldMatch(sourceField, targetField, tagOnFailure, failureSamples);
+    match.setReinterpretZone(reinterpretZone);
+    matches.add(match);
+  }
+
+  /**
+   * Parses the timestamp at the given offset of the values of the most recently added field, where other text may
+   * follow it, like a log line that starts with its time. That text, without the whitespace that separates it from
+   * the timestamp, goes to the remainder field unless it is null. Only patterns and ISO8601 can parse such a value.
+   */
+  public void setPrefix(int offset, String remainderField) {
+    matches.get(matches.size() - 1).setPrefix(offset, remainderField);
+  }
+
+  /**
+   * Source values that are already timestamps are copied to the targets without parsing. With a zone, their UTC
+   * wall-clock time is re-read as a local time in that zone instead, for producers that stored local times as UTC.
+   */
+  public void setReinterpretTimezone(String timezone) {
+    reinterpretZone = timezone == null ? null : ZonePreload.forID(timezone);
+    if (timezone != null) {
+      timezones.add(timezone);
+    }
+    for (FieldMatch match : matches) {
+      match.setReinterpretZone(reinterpretZone);
+    }
+  }
+
+  /**
+   * Records how late the timestamps parsed from the most recently added field are, against the time their batch
+   * is filtered, for {@link #drainIngestLag}.
+   */
+  public void trackIngestLag() {
+    if (ingestLag == null) {
+      ingestLag = new LagHistogram();
     }
+    matches.get(matches.size() - 1).setIngestLag(ingestLag);
+  }
+
+  /**
+   * Takes the ingest lag recorded since the last call: the number of "events", the lag in milliseconds that half
+   * of them and 99% of them were at most ("p50_millis", "p99_millis") and the largest lag ("max_millis"), all -1
+   * without events, and the number of events dated later than their batch ("future_dated"). Empty when no field
+   * tracks its ingest lag.
+   */
+  public Map<String, Long> drainIngestLag() {
+    Map<String, Long> lag = new LinkedHashMap<>();
+    if (ingestLag == null) {
+      return lag;
+    }
+    LagHistogram.Interval interval = ingestLag.drain();
+    lag.put("events", interval.events);
+    lag.put("p50_millis", interval.percentile(0.5));
+    lag.put("p99_millis", interval.percentile(0.99));
+    lag.put("max_millis", interval.maxMillis);
+    lag.put("future_dated", interval.futureDated);
+    return lag;
+  }
+
+  /**
+   * Same as {@link #drainIngestLag()}, for the worker threads that each try after their batch: the lag is taken by
+   * only one of them, at most once per interval, and the others get null.
+   */
+  public Map<String, Long> drainIngestLag(long intervalMillis) {
+    long now = System.nanoTime();
+    long last = ingestLagDrainedAt.get();
+    if (last != NEVER_DRAINED && now - last < TimeUnit.MILLISECONDS.toNanos(intervalMillis)) {
+      return null;
+    }
+    if (!ingestLagDrainedAt.compareAndSet(last, now)) {
+      // Another thread took it
+      return null;
+    }
+    return drainIngestLag();
+  }
+
+  /**
+   * The number of failures captured as samples so far, which changes whenever {@link #getFailureSamples} does.
+   */
+  public long getCapturedFailures() {
+    return failureSamples.captured();
+  }
+
+  /**
+   * The last failures to parse, the most recent first, with when they happened, the field, the value, the formats
+   * tried and the last error. Failures are captured at most ten times per second.
+   */
+  public List<String> getFailureSamples() {
+    List<String> samples = new ArrayList<>();
+    for (FailureSamples.Sample sample : failureSamples.recent()) {
+      samples.add(sample.toString());
+    }
+    return samples;
+  }
+
+  /**
+   * Also stores the timestamps parsed from the most recently added field in another field, as a Timestamp
+   * ("timestamp"), as milliseconds or nanoseconds since the epoch ("epoch_millis", "epoch_nanos"), as UTC ISO8601
+   * text ("iso8601"), truncated to their minute, hour or day in UTC ("timestamp_minute", "timestamp_hour",
+   * "timestamp_day") or as the label of their bucket of time formatted with a Joda pattern in UTC
+   * ("label:YYYY.MM.dd").
+   */
+  public void addTarget(String targetField, String encoding) {
+    matches.get(matches.size() - 1).addTarget(targetField, encoding);
+  }
+
+  /**
+   * Tags to add to every parsed event, so that a plain add_tag decoration does not need a call into Ruby per event.
+   */
+  public void setTagsOnSuccess(List<String> tags) {
+    this.tagsOnSuccess = tags.toArray(new String[0]);
   }
 
   public void acceptFilterConfig(String format, String locale, String timezone) {
-    TimestampParser parser = TimestampParserFactory.makeParser(format, locale, timezone);
+    acceptFilterConfig(format, locale, timezone, true);
+  }
+
+  /**
+   * Adds a format to the last source field, with a parser of its own rather than the one shared by every filter with
+   * the same format, locale and timezone when shareParser is false.
+   */
+  public void acceptFilterConfig(String format, String locale, String timezone, boolean shareParser) {
+    TimestampParser parser = TimestampParserFactory.makeParser(format, locale, timezone, shareParser);
     logger.debug("Date filter with format={}, locale={}, timezone={} built as {}", format, locale, timezone, parser.getClass().getName());
-    if (parser instanceof JodaParser || parser instanceof CasualISO8601Parser) {
-      executors.add(new TextParserExecutor(parser, timezone));
+    FieldMatch match = matches.get(matches.size() - 1);
+    dynamicTimezone |= timezone != null && timezone.contains("%{");
+    if (timezone != null && !timezone.contains("%{")) {
+      timezones.add(timezone);
+    }
+    // Zone IDs parsed from the values, or AUTO, can be any zone
+    anyZone |= dynamicTimezone || format.contains("ZZZ") || parser instanceof AutoDetectParser;
+    if (parser instanceof AutoDetectParser) {
+      match.addExecutor(new AutoParserExecutor((AutoDetectParser) parser, timezone), format);
+    } else if (parser instanceof EpochNanosParser) {
+      match.addExecutor(new EpochNanosParserExecutor((EpochNanosParser) parser), format);
+    } else if (parser instanceof UnixEpochParser || parser instanceof UnixMillisEpochParser) {
+      match.addExecutor(new NumericParserExecutor(parser), format);
     } else {
-      executors.add(new NumericParserExecutor(parser));
+      // Patterns, ISO8601 and TAI64N only read text
+      match.addExecutor(new TextParserExecutor(parser, timezone), format);
+    }
+  }
+
+  /**
+   * Loads the time zones that the filter uses up front, so that neither building the parsers nor the first events
+   * pay for it: the configured timezones, or every zone when they can come from the events, or every zone anyway
+   * with all set. Zones stay loaded for as long as the process runs.
+   *
+   * @return the number of zones that were not loaded yet
+   */
+  public int preloadTimezones(boolean all) {
+    long start = System.nanoTime();
+    int loaded = all || anyZone ? ZonePreload.preloadAll() : ZonePreload.preload(timezones);
+    logger.info("Date filter preloaded {} time zones in {}ms", loaded, (System.nanoTime() - start) / 1_000_000);
+    return loaded;
+  }
+
+  /**
+   * Runs made-up inputs for each configured format, plus the given samples, through the parsers of every field, so
+   * that the JIT compiles them before the first events arrive. Timezones taken from events can be any zone, so all of
+   * them are loaded up front. Formats that cannot parse their own output and samples that no field parses are logged
+   * as warnings.
+   *
+   * @return the time spent warming up, in nanoseconds
+   */
+  public long warmup(List<String> samples, int iterations) {
+    long start = System.nanoTime();
+    if (dynamicTimezone) {
+      ZonePreload.preloadAll();
     }
+    Set<String> parsed = new HashSet<>();
+    for (FieldMatch match : matches) {
+      parsed.addAll(match.warmup(samples, iterations));
+    }
+    for (String sample : samples) {
+      if (!parsed.contains(sample)) {
+        logger.warn("No date format matches the warmup sample {}", sample);
+      }
+    }
+    if (ingestLag != null) {
+      // Made-up inputs are not events
+      ingestLag.drain();
+    }
+    long elapsed = System.nanoTime() - start;
+    logger.info("Date filter warmed up in {}ms", elapsed / 1_000_000);
+    return elapsed;
   }
 
   public List<RubyEvent> receive(List<RubyEvent> rubyEvents) {
+    List<RubyEvent> matched = batchHandler == null ? null : new ArrayList<>(rubyEvents.size());
+    List<RubyEvent> failed = batchHandler == null ? null : new ArrayList<>();
+    if (ingestLag != null) {
+      ingestLag.tick();
+    }
     for (RubyEvent rubyEvent : rubyEvents) {
       Event event = rubyEvent.getEvent();
 
-      switch (executeParsers(event)) {
+      switch (executeParsers(event, true)) {
         case FIELD_VALUE_IS_NULL_OR_FIELD_NOT_PRESENT:
         case IGNORED:
           continue;
         case SUCCESS:
+          for (String t : tagsOnSuccess) {
+            event.tag(t);
+          }
           if (successHandler != null) {
             successHandler.handle(rubyEvent);
           }
+          if (matched != null) {
+            matched.add(rubyEvent);
+          }
           break;
         case FAIL: // fall through
         default:
-          for (String t : tagOnFailure) {
-            event.tag(t);
-          }
           if (failureHandler != null) {
             failureHandler.handle(rubyEvent);
           }
+          if (failed != null) {
+            failed.add(rubyEvent);
+          }
       }
     }
+    if (batchHandler != null && (!matched.isEmpty() || !failed.isEmpty())) {
+      batchHandler.handle(matched, failed);
+    }
     return rubyEvents;
   }
 
   public ParseExecutionResult executeParsers(Event event) {
-    Object input = event.getField(sourceField);
+    if (ingestLag != null) {
+      ingestLag.tick();
+    }
+    return executeParsers(event, false);
+  }
+
+  /*
+   * The event fails if any of its fields fails to parse, and succeeds if at least one field parsed and none failed.
+   */
+  private ParseExecutionResult executeParsers(Event event, boolean tagFailures) {
     if (event.isCancelled()) { return ParseExecutionResult.IGNORED; }
-    if (input == null) { return ParseExecutionResult.FIELD_VALUE_IS_NULL_OR_FIELD_NOT_PRESENT; }
-
-    for (ParserExecutor executor : executors) {
-      try {
-        Instant instant = executor.execute(input, event);
-        setter.set(event, instant);
-        return ParseExecutionResult.SUCCESS;
-      } catch (IllegalArgumentException | IOException e) {
-        // do nothing, try next ParserExecutor
+
+    ParseExecutionResult result = ParseExecutionResult.FIELD_VALUE_IS_NULL_OR_FIELD_NOT_PRESENT;
+    for (FieldMatch match : matches) {
+      Object parse = diagnostics.startParse();
+      ParseExecutionResult matchResult = match.execute(event);
+      if (parse != null) {
+        diagnostics.endParse(parse, match.getSourceField(), matchResult);
+      }
+      switch (matchResult) {
+        case SUCCESS:
+          if (result != ParseExecutionResult.FAIL) {
+            result = ParseExecutionResult.SUCCESS;
+          }
+          break;
+        case FAIL:
+          if (tagFailures) {
+            match.tagFailure(event);
+          }
+          result = ParseExecutionResult.FAIL;
+          break;
+        default:
+          break;
       }
     }
-    return ParseExecutionResult.FAIL;
+    return result;
   }
 }
@@ -19,26 +19,29 @@
 
 package org.logstash.filters;
 
-import org.joda.time.Instant;
 import org.logstash.Event;
-import org.logstash.filters.parser.TimestampParser;
+import org.logstash.FieldReference;
+import org.logstash.Timestamp;
 
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
-class DynamicTzInputHandler implements InputHandler {
-  private TimestampParser parser;
-  private String timeZone;
+final class EpochMillisSetter implements ResultSetter {
+  private final FieldReference target;
 
-  public DynamicTzInputHandler(TimestampParser parser, String timeZone) {
-    this.parser = parser;
-    this.timeZone = timeZone;
+  EpochMillisSetter(String target) {
+    this.target = FieldReference.from(target);
   }
 
-  public DynamicTzInputHandler(TimestampParser parser) {
-    this.parser = parser;
+  public void set(Event event, Timestamp timestamp) {
+    event.setField(this.target, timestamp.toEpochMilli());
   }
 
-  public Instant handle(String input, Event event) throws IOException {
-    return this.parser.parseWithTimeZone(input, event.sprintf(timeZone));
+  public void setAll(Event event, List<Timestamp> timestamps) {
+    List<Long> millis = new ArrayList<>(timestamps.size());
+    for (Timestamp timestamp : timestamps) {
+      millis.add(timestamp.toEpochMilli());
+    }
+    event.setField(this.target, millis);
   }
 }
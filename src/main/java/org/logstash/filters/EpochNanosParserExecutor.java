@@ -0,0 +1,63 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters;
+
+import org.logstash.Event;
+import org.logstash.Timestamp;
+import org.logstash.filters.parser.EpochNanosParser;
+import org.logstash.filters.parser.TimestampParser;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Executes an epoch parser to the nanosecond, so that timestamps keep what the input has beyond milliseconds, on
+ * Logstash 8 where timestamps can hold it.
+ */
+final class EpochNanosParserExecutor implements ParserExecutor {
+  private final EpochNanosParser parser;
+
+  public EpochNanosParserExecutor(EpochNanosParser parser) {
+    this.parser = parser;
+  }
+
+  public Timestamp execute(Object input, Event event) throws IOException {
+    long nanos;
+    if (input instanceof CharSequence) {
+      nanos = parser.parseNanos((CharSequence) input);
+    } else if (input instanceof Long) {
+      nanos = parser.parseNanos((long) (Long) input);
+    } else if (input instanceof Integer) {
+      nanos = parser.parseNanos((long) (Integer) input);
+    } else if (input instanceof Double) {
+      nanos = parser.parseNanos((double) (Double) input);
+    } else if (input instanceof BigDecimal) {
+      nanos = parser.parseNanos((BigDecimal) input);
+    } else {
+      throw new IllegalArgumentException("Cannot parse date for value of type " + input.getClass().getName());
+    }
+    return Timestamps.of(Instant.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L), Math.floorMod(nanos, 1_000_000_000L)));
+  }
+
+  public TimestampParser getParser() {
+    return parser;
+  }
+}
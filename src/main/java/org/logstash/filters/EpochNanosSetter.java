@@ -0,0 +1,71 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters;
+
+import org.logstash.Event;
+import org.logstash.FieldReference;
+import org.logstash.Timestamp;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Leaves its target unset for timestamps that do not fit in a long as nanoseconds, before 1677-09-21 or after
+ * 2262-04-11, so that the other targets of the event are still set. Timestamps only hold milliseconds on
+ * Logstash 7, where the nanoseconds are whole milliseconds.
+ */
+final class EpochNanosSetter implements ResultSetter {
+  private static final Instant MIN = Instant.ofEpochSecond(0, Long.MIN_VALUE);
+  private static final Instant MAX = Instant.ofEpochSecond(0, Long.MAX_VALUE);
+  private final FieldReference target;
+
+  EpochNanosSetter(String target) {
+    this.target = FieldReference.from(target);
+  }
+
+  public void set(Event event, Timestamp timestamp) {
+    Instant instant = Timestamps.toInstant(timestamp);
+    if (fits(instant)) {
+      event.setField(this.target, nanos(instant));
+    }
+  }
+
+  // The whole array is left out when one of its timestamps does not fit, rather than shifting the others
+  public void setAll(Event event, List<Timestamp> timestamps) {
+    List<Long> nanos = new ArrayList<>(timestamps.size());
+    for (Timestamp timestamp : timestamps) {
+      Instant instant = Timestamps.toInstant(timestamp);
+      if (!fits(instant)) {
+        return;
+      }
+      nanos.add(nanos(instant));
+    }
+    event.setField(this.target, nanos);
+  }
+
+  static boolean fits(Instant instant) {
+    return !instant.isBefore(MIN) && !instant.isAfter(MAX);
+  }
+
+  private static long nanos(Instant instant) {
+    return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+  }
+}
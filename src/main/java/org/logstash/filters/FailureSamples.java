@@ -0,0 +1,102 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The last failures to parse of a filter, kept in a fixed-size ring for diagnostics. At most one failure is
+ * captured per interval, without locking: failures that come faster are left out, so that a flood of bad values
+ * costs no more than the tags they get.
+ */
+final class FailureSamples {
+  static final int CAPACITY = 16;
+  static final long MIN_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+  private static final int MAX_VALUE_LENGTH = 256;
+
+  static final class Sample {
+    final long timeMillis;
+    final String field;
+    final String value;
+    final List<String> formats;
+    final String error;
+
+    Sample(long timeMillis, String field, Object value, List<String> formats, String error) {
+      String text = String.valueOf(value);
+      this.timeMillis = timeMillis;
+      this.field = field;
+      this.value = text.length() > MAX_VALUE_LENGTH ? text.substring(0, MAX_VALUE_LENGTH) : text;
+      this.formats = formats;
+      this.error = error;
+    }
+
+    @Override
+    public String toString() {
+      return Instant.ofEpochMilli(timeMillis) + " field=" + field + " value=\"" + value + "\" formats=" + formats + " error=" + error;
+    }
+  }
+
+  private final AtomicReferenceArray<Sample> ring = new AtomicReferenceArray<>(CAPACITY);
+  private final AtomicLong captured = new AtomicLong();
+  private final AtomicLong nextCapture = new AtomicLong(System.nanoTime());
+
+  /**
+   * Returns true when a failure can be captured now, in which case it must be {@link #add added}.
+   */
+  boolean shouldCapture() {
+    long now = System.nanoTime();
+    long next = nextCapture.get();
+    return now - next >= 0 && nextCapture.compareAndSet(next, now + MIN_INTERVAL_NANOS);
+  }
+
+  void add(Sample sample) {
+    long index = captured.getAndIncrement();
+    ring.set((int) (index % CAPACITY), sample);
+  }
+
+  long captured() {
+    return captured.get();
+  }
+
+  /**
+   * Returns the captured failures, the most recent first.
+   */
+  List<Sample> recent() {
+    long last = captured.get();
+    int count = (int) Math.min(CAPACITY, last);
+    if (count == 0) {
+      return Collections.emptyList();
+    }
+    List<Sample> samples = new ArrayList<>(count);
+    for (long i = last - 1; i >= last - count; i--) {
+      Sample sample = ring.get((int) (i % CAPACITY));
+      if (sample != null) {
+        samples.add(sample);
+      }
+    }
+    return samples;
+  }
+}
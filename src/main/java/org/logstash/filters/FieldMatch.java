@@ -0,0 +1,493 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.joda.time.DateTimeZone;
+import org.jruby.RubyString;
+import org.jruby.RubyTime;
+import org.logstash.Event;
+import org.logstash.FieldReference;
+import org.logstash.Javafier;
+import org.logstash.Timestamp;
+import org.logstash.filters.parser.FormatAutomaton;
+import org.logstash.filters.parser.PrefixParser;
+import org.logstash.filters.parser.SampleInputs;
+import org.logstash.filters.parser.TimestampParser;
+
+import java.io.IOException;
+import java.text.ParsePosition;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * One source field of a {@link DateFilter}, with the formats it is tried against, where the result goes and
+ * how a failure is tagged.
+ */
+class FieldMatch {
+  private static Logger logger = LogManager.getLogger(FieldMatch.class);
+  private static final ParseDiagnostics diagnostics = ParseDiagnostics.INSTANCE;
+  private static final String LABEL_PREFIX = "label:";
+  private final FieldReference sourceField;
+  private final String sourceFieldName;
+  private final String[] tagOnFailure;
+  private final FailureSamples failureSamples;
+  private final List<ParserExecutor> executors = new ArrayList<>();
+  private final List<String> formats = new ArrayList<>();
+  // Tells which formats could parse a text value, so that only those are tried
+  private FormatAutomaton automaton;
+  // Null for @timestamp. The target is set directly rather than through a ResultSetter, so that the common case of a
+  // single target has no call site shared with other kinds of setters.
+  private final FieldReference target;
+  private ResultSetter[] setters = new ResultSetter[0];
+  // Arrays cannot go to @timestamp, so array values fail before any target is set when one of the targets is there
+  private boolean timestampTarget;
+  // Zone to re-read the UTC wall-clock time of values that are already timestamps in, null to keep them as they are
+  private DateTimeZone reinterpretZone;
+  // Where the timestamp starts in text values that go on after it, -1 when it is the whole value
+  private int prefixOffset = -1;
+  // Null to drop the text after a prefix
+  private FieldReference remainderTarget;
+  // Null when the ingest lag of this field is not tracked
+  private LagHistogram ingestLag;
+
+  FieldMatch(String sourceField, String targetField, List<String> tagOnFailure, FailureSamples failureSamples) {
+    this.sourceField = FieldReference.from(sourceField);
+    this.sourceFieldName = sourceField;
+    this.tagOnFailure = tagOnFailure.toArray(new String[0]);
+    this.failureSamples = failureSamples;
+    this.target = targetField.equals("@timestamp") ? null : FieldReference.from(targetField);
+    this.timestampTarget = target == null;
+  }
+
+  /*
+   * Also stores the parsed timestamp in another field, as a Timestamp ("timestamp"), as milliseconds or nanoseconds
+   * since the epoch ("epoch_millis", "epoch_nanos"), as UTC ISO8601 text ("iso8601"), truncated to its minute,
+   * hour or day in UTC ("timestamp_minute", "timestamp_hour", "timestamp_day") or as the label of its bucket of time
+   * formatted with a pattern in UTC ("label:YYYY.MM.dd").
+   */
+  void addTarget(String targetField, String encoding) {
+    ResultSetter setter;
+    if (targetField.equals("@timestamp")) {
+      if (!encoding.equals("timestamp")) {
+        throw new IllegalArgumentException("@timestamp can only hold a timestamp, not " + encoding);
+      }
+      setter = new TimestampSetter();
+      timestampTarget = true;
+    } else if (encoding.startsWith(LABEL_PREFIX)) {
+      setter = new BucketLabelSetter(targetField, encoding.substring(LABEL_PREFIX.length()));
+    } else {
+      switch (encoding) {
+        case "timestamp":
+          setter = new FieldSetter(targetField);
+          break;
+        case "epoch_millis":
+          setter = new EpochMillisSetter(targetField);
+          break;
+        case "epoch_nanos":
+          setter = new EpochNanosSetter(targetField);
+          break;
+        case "iso8601":
+          setter = new Iso8601Setter(targetField);
+          break;
+        case "timestamp_minute":
+          setter = new TruncatedTimestampSetter(targetField, TimeUnit.MINUTES.toMillis(1));
+          break;
+        case "timestamp_hour":
+          setter = new TruncatedTimestampSetter(targetField, TimeUnit.HOURS.toMillis(1));
+          break;
+        case "timestamp_day":
+          setter = new TruncatedTimestampSetter(targetField, TimeUnit.DAYS.toMillis(1));
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown target encoding " + encoding);
+      }
+    }
+    setters = Arrays.copyOf(setters, setters.length + 1);
+    setters[setters.length - 1] = setter;
+  }
+
+  void setIngestLag(LagHistogram ingestLag) {
+    this.ingestLag = ingestLag;
+  }
+
+  void setReinterpretZone(DateTimeZone zone) {
+    reinterpretZone = zone;
+  }
+
+  /*
+   * Parses the timestamp at the given offset of text values, where other text may follow it, and stores that text,
+   * without the whitespace after the timestamp, in the remainder field unless it is null.
+   */
+  void setPrefix(int offset, String remainderField) {
+    if (offset < 0) {
+      throw new IllegalArgumentException("The offset of the timestamp cannot be negative, got " + offset);
+    }
+    for (int i = 0; i < executors.size(); i++) {
+      checkPrefix(executors.get(i), formats.get(i));
+    }
+    prefixOffset = offset;
+    remainderTarget = remainderField == null ? null : FieldReference.from(remainderField);
+  }
+
+  private static void checkPrefix(ParserExecutor executor, String format) {
+    if (!(executor.getParser() instanceof PrefixParser)) {
+      throw new IllegalArgumentException("The format " + format + " cannot parse a timestamp followed by other text, only patterns and ISO8601 can");
+    }
+  }
+
+  String getSourceField() {
+    return sourceFieldName;
+  }
+
+  void addExecutor(ParserExecutor executor, String format) {
+    if (prefixOffset >= 0) {
+      checkPrefix(executor, format);
+    }
+    executors.add(executor);
+    formats.add(format);
+    List<TimestampParser> parsers = executors.stream().map(ParserExecutor::getParser).collect(Collectors.toList());
+    automaton = FormatAutomaton.of(parsers);
+  }
+
+  void tagFailure(Event event) {
+    for (String t : tagOnFailure) {
+      event.tag(t);
+    }
+  }
+
+  /*
+   * Parses made-up inputs for every format, plus the given samples, the given number of times. Formats that cannot
+   * parse their own made-up input are reported since they point to a config error.
+   *
+   * Returns the samples that this field parsed.
+   */
+  Set<String> warmup(List<String> samples, int iterations) {
+    long now = System.currentTimeMillis();
+    List<Event> events = new ArrayList<>();
+    for (ParserExecutor executor : executors) {
+      for (Object input : SampleInputs.of(executor.getParser(), now)) {
+        Event event = sampleEvent(input);
+        try {
+          execute(executor, input, event);
+          events.add(event);
+        } catch (IllegalArgumentException | IOException e) {
+          logger.warn("Date format parsed with {} cannot parse its own output {}: {}", executor.getParser().getClass().getName(), input, e.getMessage());
+        }
+      }
+    }
+    // The failures of made-up inputs are left out of the failure samples and the diagnostics
+    FailureSamples discarded = new FailureSamples();
+    Set<String> parsed = new HashSet<>();
+    for (String sample : samples) {
+      Event event = sampleEvent(sample);
+      if (execute(event, discarded, ParseDiagnostics.NONE) == ParseExecutionResult.SUCCESS) {
+        parsed.add(sample);
+      }
+      events.add(event);
+    }
+
+    for (int i = 0; i < iterations; i++) {
+      for (Event event : events) {
+        execute(event, discarded, ParseDiagnostics.NONE);
+      }
+    }
+    return parsed;
+  }
+
+  private Event sampleEvent(Object input) {
+    Event event = new Event();
+    for (ParserExecutor executor : executors) {
+      executor.prepareWarmupEvent(event);
+    }
+    event.setField(sourceField, input);
+    return event;
+  }
+
+  ParseExecutionResult execute(Event event) {
+    return execute(event, failureSamples, diagnostics);
+  }
+
+  private ParseExecutionResult execute(Event event, FailureSamples samples, ParseDiagnostics hooks) {
+    Object input = event.getUnconvertedField(sourceField);
+
+    // Text is handed to the parsers as the event's own bytes when possible, everything else the way getField would
+    if (input instanceof RubyString) {
+      input = AsciiByteSequence.of((RubyString) input);
+    } else if (input instanceof RubyTime) {
+      RubyTime time = (RubyTime) input;
+      input = Instant.ofEpochMilli(time.getDateTime().getMillis()).plusNanos(time.getNSec());
+    } else if (input != null) {
+      input = Javafier.deep(input);
+    }
+    if (input == null) { return ParseExecutionResult.FIELD_VALUE_IS_NULL_OR_FIELD_NOT_PRESENT; }
+    if (input instanceof List) {
+      return executeAll(event, (List<?>) input, samples, hooks);
+    }
+
+    // Values that are already timestamps are copied as they are, no format could parse them anyway
+    Timestamp passthrough = asTimestamp(input);
+    if (passthrough != null) {
+      setTargets(event, passthrough);
+      return ParseExecutionResult.SUCCESS;
+    }
+
+    // The automaton follows the shape of whole values, a prefix is followed by anything
+    String text = null;
+    ParsePosition position = null;
+    long candidates = -1L;
+    if (prefixOffset >= 0 && input instanceof CharSequence) {
+      text = input.toString();
+      position = new ParsePosition(prefixOffset);
+    } else if (automaton != null && input instanceof CharSequence) {
+      candidates = automaton.candidates((CharSequence) input);
+    }
+    Exception lastError = null;
+    for (int i = 0; i < executors.size(); i++) {
+      if ((candidates & (1L << i)) == 0) {
+        continue;
+      }
+      Timestamp timestamp;
+      try {
+        if (position == null) {
+          timestamp = execute(executors.get(i), input, event);
+        } else {
+          position.setIndex(prefixOffset);
+          timestamp = executePrefix(executors.get(i), text, event, position);
+        }
+      } catch (IllegalArgumentException | IOException e) {
+        // try next ParserExecutor
+        hooks.failure(sourceFieldName, formats.get(i), input, e);
+        lastError = e;
+        continue;
+      }
+      // Outside of the try, a format that parsed the value is never followed by another one
+      setTargets(event, timestamp);
+      if (position != null) {
+        setRemainder(event, text, position.getIndex());
+      }
+      return ParseExecutionResult.SUCCESS;
+    }
+    sampleFailure(samples, input, candidates, lastError);
+    return ParseExecutionResult.FAIL;
+  }
+
+  /*
+   * Parses every element of an array value, trying the format that parsed the previous element first, since the
+   * elements of an array almost always share their format, and the other formats only when it fails. The targets
+   * get arrays of the results in the same order, and only when every element parsed. Elements are parsed whole,
+   * whatever the prefix offset.
+   */
+  private ParseExecutionResult executeAll(Event event, List<?> inputs, FailureSamples samples, ParseDiagnostics hooks) {
+    if (inputs.isEmpty()) {
+      return ParseExecutionResult.FIELD_VALUE_IS_NULL_OR_FIELD_NOT_PRESENT;
+    }
+    if (timestampTarget) {
+      sampleFailure(samples, inputs, 0L, "@timestamp cannot hold an array of timestamps");
+      return ParseExecutionResult.FAIL;
+    }
+    List<Timestamp> timestamps = new ArrayList<>(inputs.size());
+    int format = -1;
+    for (Object input : inputs) {
+      Timestamp timestamp = input == null ? null : asTimestamp(input);
+      long candidates = -1L;
+      Exception lastError = null;
+      if (timestamp == null && input != null && format >= 0) {
+        try {
+          timestamp = execute(executors.get(format), input, event);
+        } catch (IllegalArgumentException | IOException e) {
+          hooks.failure(sourceFieldName, formats.get(format), input, e);
+          lastError = e;
+        }
+      }
+      if (timestamp == null && input != null) {
+        candidates = automaton != null && input instanceof CharSequence ? automaton.candidates((CharSequence) input) : -1L;
+        for (int i = 0; i < executors.size() && timestamp == null; i++) {
+          if (i == format || (candidates & (1L << i)) == 0) {
+            continue;
+          }
+          try {
+            timestamp = execute(executors.get(i), input, event);
+            format = i;
+          } catch (IllegalArgumentException | IOException e) {
+            hooks.failure(sourceFieldName, formats.get(i), input, e);
+            lastError = e;
+          }
+        }
+      }
+      if (timestamp == null) {
+        sampleFailure(samples, inputs, candidates, lastError);
+        return ParseExecutionResult.FAIL;
+      }
+      timestamps.add(timestamp);
+    }
+    setAllTargets(event, timestamps);
+    return ParseExecutionResult.SUCCESS;
+  }
+
+  private void sampleFailure(FailureSamples samples, Object input, long candidates, Exception lastError) {
+    sampleFailure(samples, input, candidates, lastError == null ? "no format matches the shape of the value" : lastError.getMessage());
+  }
+
+  private void sampleFailure(FailureSamples samples, Object input, long candidates, String error) {
+    if (!samples.shouldCapture()) {
+      return;
+    }
+    List<String> tried = new ArrayList<>();
+    for (int i = 0; i < formats.size(); i++) {
+      if ((candidates & (1L << i)) != 0) {
+        tried.add(formats.get(i));
+      }
+    }
+    samples.add(new FailureSamples.Sample(System.currentTimeMillis(), sourceFieldName, input, tried, error));
+  }
+
+  private void setTargets(Event event, Timestamp timestamp) {
+    if (target == null) {
+      event.setTimestamp(timestamp);
+    } else {
+      event.setField(target, timestamp);
+    }
+    for (ResultSetter setter : setters) {
+      set(setter, event, timestamp);
+    }
+    if (ingestLag != null) {
+      ingestLag.record(timestamp.toEpochMilli());
+    }
+  }
+
+  private void setAllTargets(Event event, List<Timestamp> timestamps) {
+    event.setField(target, timestamps);
+    for (ResultSetter setter : setters) {
+      setAll(setter, event, timestamps);
+    }
+    if (ingestLag != null) {
+      for (Timestamp timestamp : timestamps) {
+        ingestLag.record(timestamp.toEpochMilli());
+      }
+    }
+  }
+
+  /*
+   * The executors and setters are called through casts to their classes, which are final, so that each of the calls
+   * below sees a single class and is bound statically. The interface calls would see every kind of executor and
+   * setter configured in the process, and stop inlining.
+   */
+  private static Timestamp execute(ParserExecutor executor, Object input, Event event) throws IOException {
+    if (executor instanceof TextParserExecutor) {
+      return ((TextParserExecutor) executor).execute(input, event);
+    } else if (executor instanceof NumericParserExecutor) {
+      return ((NumericParserExecutor) executor).execute(input, event);
+    } else if (executor instanceof EpochNanosParserExecutor) {
+      return ((EpochNanosParserExecutor) executor).execute(input, event);
+    } else if (executor instanceof AutoParserExecutor) {
+      return ((AutoParserExecutor) executor).execute(input, event);
+    }
+    return executor.execute(input, event);
+  }
+
+  // Only text is parsed as a prefix
+  private static Timestamp executePrefix(ParserExecutor executor, String text, Event event, ParsePosition position) throws IOException {
+    if (executor instanceof TextParserExecutor) {
+      return ((TextParserExecutor) executor).executePrefix(text, event, position);
+    }
+    return executor.executePrefix(text, event, position);
+  }
+
+  private static void set(ResultSetter setter, Event event, Timestamp timestamp) {
+    if (setter instanceof FieldSetter) {
+      ((FieldSetter) setter).set(event, timestamp);
+    } else if (setter instanceof EpochMillisSetter) {
+      ((EpochMillisSetter) setter).set(event, timestamp);
+    } else if (setter instanceof EpochNanosSetter) {
+      ((EpochNanosSetter) setter).set(event, timestamp);
+    } else if (setter instanceof Iso8601Setter) {
+      ((Iso8601Setter) setter).set(event, timestamp);
+    } else if (setter instanceof TimestampSetter) {
+      ((TimestampSetter) setter).set(event, timestamp);
+    } else if (setter instanceof TruncatedTimestampSetter) {
+      ((TruncatedTimestampSetter) setter).set(event, timestamp);
+    } else if (setter instanceof BucketLabelSetter) {
+      ((BucketLabelSetter) setter).set(event, timestamp);
+    } else {
+      setter.set(event, timestamp);
+    }
+  }
+
+  // TimestampSetter is left out, arrays never reach it
+  private static void setAll(ResultSetter setter, Event event, List<Timestamp> timestamps) {
+    if (setter instanceof FieldSetter) {
+      ((FieldSetter) setter).setAll(event, timestamps);
+    } else if (setter instanceof EpochMillisSetter) {
+      ((EpochMillisSetter) setter).setAll(event, timestamps);
+    } else if (setter instanceof EpochNanosSetter) {
+      ((EpochNanosSetter) setter).setAll(event, timestamps);
+    } else if (setter instanceof Iso8601Setter) {
+      ((Iso8601Setter) setter).setAll(event, timestamps);
+    } else if (setter instanceof TruncatedTimestampSetter) {
+      ((TruncatedTimestampSetter) setter).setAll(event, timestamps);
+    } else if (setter instanceof BucketLabelSetter) {
+      ((BucketLabelSetter) setter).setAll(event, timestamps);
+    } else {
+      setter.setAll(event, timestamps);
+    }
+  }
+
+  private void setRemainder(Event event, String text, int end) {
+    if (remainderTarget == null) {
+      return;
+    }
+    int start = end;
+    while (start < text.length() && Character.isWhitespace(text.charAt(start))) {
+      start++;
+    }
+    event.setField(remainderTarget, text.substring(start));
+  }
+
+  private Timestamp asTimestamp(Object input) {
+    Instant instant;
+    if (input instanceof Timestamp) {
+      if (reinterpretZone == null) {
+        return (Timestamp) input;
+      }
+      instant = Timestamps.toInstant((Timestamp) input);
+    } else if (input instanceof Instant) {
+      instant = (Instant) input;
+    } else if (input instanceof Date) {
+      instant = ((Date) input).toInstant();
+    } else {
+      return null;
+    }
+    if (reinterpretZone != null) {
+      long wallClockMillis = instant.toEpochMilli();
+      long millis = reinterpretZone.convertLocalToUTC(wallClockMillis, false);
+      instant = instant.plusMillis(millis - wallClockMillis);
+    }
+    return Timestamps.of(instant);
+  }
+}
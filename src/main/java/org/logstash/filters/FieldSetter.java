@@ -19,18 +19,24 @@
 
 package org.logstash.filters;
 
-import org.joda.time.Instant;
 import org.logstash.Event;
+import org.logstash.FieldReference;
 import org.logstash.Timestamp;
 
-class FieldSetter implements ResultSetter {
-  private String target;
+import java.util.List;
+
+final class FieldSetter implements ResultSetter {
+  private final FieldReference target;
 
   FieldSetter(String target) {
-    this.target = target;
+    this.target = FieldReference.from(target);
+  }
+
+  public void set(Event event, Timestamp timestamp) {
+    event.setField(this.target, timestamp);
   }
 
-  public void set(Event event, Instant instant) {
-    event.setField(this.target, new Timestamp(instant.getMillis()));
+  public void setAll(Event event, List<Timestamp> timestamps) {
+    event.setField(this.target, timestamps);
   }
 }
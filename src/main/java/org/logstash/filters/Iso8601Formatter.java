@@ -0,0 +1,98 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Formats instants as UTC ISO8601 text into a reused byte buffer. The date and hour part is kept from one call to
+ * the next, so that instants within the same hour, as most consecutive events are, only format minutes, seconds and
+ * the fraction. Instances are not thread safe.
+ */
+public final class Iso8601Formatter {
+  private static final long SECONDS_PER_HOUR = 3600;
+
+  private final byte[] buffer = new byte[64];
+  private long hourStart = Long.MIN_VALUE;
+  private int prefixLength;
+
+  public byte[] buffer() {
+    return buffer;
+  }
+
+  /**
+   * Formats the instant, such as {@code 2016-11-03T21:10:57.123Z}, and returns the number of bytes written. The
+   * fraction has three, six or nine digits, as many as needed to keep the precision of the instant.
+   */
+  public int format(long epochSecond, int nanos) {
+    long hour = Math.floorDiv(epochSecond, SECONDS_PER_HOUR) * SECONDS_PER_HOUR;
+    if (hour != hourStart) {
+      cachePrefix(hour);
+    }
+
+    int position = prefixLength;
+    int secondOfHour = (int) (epochSecond - hour);
+    position = writeDigits(secondOfHour / 60, 2, position);
+    buffer[position++] = ':';
+    position = writeDigits(secondOfHour % 60, 2, position);
+    buffer[position++] = '.';
+    if (nanos % 1_000_000 == 0) {
+      position = writeDigits(nanos / 1_000_000, 3, position);
+    } else if (nanos % 1_000 == 0) {
+      position = writeDigits(nanos / 1_000, 6, position);
+    } else {
+      position = writeDigits(nanos, 9, position);
+    }
+    buffer[position++] = 'Z';
+    return position;
+  }
+
+  private void cachePrefix(long hour) {
+    LocalDateTime dateTime = LocalDateTime.ofEpochSecond(hour, 0, ZoneOffset.UTC);
+    int year = dateTime.getYear();
+    int position = 0;
+    if (year >= 0 && year <= 9999) {
+      position = writeDigits(year, 4, position);
+    } else {
+      // Expanded years need a sign, as in java.time
+      byte[] text = String.format("%+05d", year).getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+      System.arraycopy(text, 0, buffer, 0, text.length);
+      position = text.length;
+    }
+    buffer[position++] = '-';
+    position = writeDigits(dateTime.getMonthValue(), 2, position);
+    buffer[position++] = '-';
+    position = writeDigits(dateTime.getDayOfMonth(), 2, position);
+    buffer[position++] = 'T';
+    position = writeDigits(dateTime.getHour(), 2, position);
+    buffer[position++] = ':';
+    prefixLength = position;
+    hourStart = hour;
+  }
+
+  private int writeDigits(int value, int digits, int position) {
+    for (int i = position + digits - 1; i >= position; i--) {
+      buffer[i] = (byte) ('0' + value % 10);
+      value /= 10;
+    }
+    return position + digits;
+  }
+}
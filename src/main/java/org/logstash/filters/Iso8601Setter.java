@@ -0,0 +1,64 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters;
+
+import org.jcodings.specific.UTF8Encoding;
+import org.jruby.RubyString;
+import org.jruby.util.ByteList;
+import org.logstash.Event;
+import org.logstash.FieldReference;
+import org.logstash.RubyUtil;
+import org.logstash.Timestamp;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stores the timestamp as UTC ISO8601 text, built straight into the bytes of the event's string.
+ */
+final class Iso8601Setter implements ResultSetter {
+  private final FieldReference target;
+  private final ThreadLocal<Iso8601Formatter> formatters = ThreadLocal.withInitial(Iso8601Formatter::new);
+
+  Iso8601Setter(String target) {
+    this.target = FieldReference.from(target);
+  }
+
+  public void set(Event event, Timestamp timestamp) {
+    event.setField(this.target, format(formatters.get(), timestamp));
+  }
+
+  public void setAll(Event event, List<Timestamp> timestamps) {
+    Iso8601Formatter formatter = formatters.get();
+    List<RubyString> texts = new ArrayList<>(timestamps.size());
+    for (Timestamp timestamp : timestamps) {
+      texts.add(format(formatter, timestamp));
+    }
+    event.setField(this.target, texts);
+  }
+
+  private static RubyString format(Iso8601Formatter formatter, Timestamp timestamp) {
+    Instant instant = Timestamps.toInstant(timestamp);
+    int length = formatter.format(instant.getEpochSecond(), instant.getNano());
+    ByteList bytes = new ByteList(formatter.buffer(), 0, length, UTF8Encoding.INSTANCE, true);
+    return RubyString.newString(RubyUtil.RUBY, bytes);
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * How late parsed event times are, the ingest lag, counted in fixed buckets without locking. The buckets are exact
+ * up to 8ms, then split each power of two in eight, so that a percentile is at most an eighth over the actual lag.
+ * The lag is measured against a clock read once per batch rather than once per event, and counters that many
+ * worker threads increment at once are {@link LongAdder}s, so that recording costs a few nanoseconds per event.
+ */
+final class LagHistogram {
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  // Lags of 2^40ms, some 35 years, and more all go to the last bucket
+  private static final int MAX_LAG_BITS = 40;
+  static final int BUCKETS = (MAX_LAG_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+  static final class Interval {
+    final long[] counts;
+    final long events;
+    final long futureDated;
+    final long maxMillis;
+
+    Interval(long[] counts, long futureDated) {
+      long events = 0;
+      long max = -1;
+      for (int i = 0; i < counts.length; i++) {
+        events += counts[i];
+        if (counts[i] > 0) {
+          max = upperBound(i);
+        }
+      }
+      this.counts = counts;
+      this.events = events;
+      this.futureDated = futureDated;
+      this.maxMillis = max;
+    }
+
+    /**
+     * The lag in milliseconds that the given share of the events were at most, or -1 without events.
+     */
+    long percentile(double share) {
+      long rank = (long) Math.ceil(share * events);
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank && seen > 0) {
+          return upperBound(i);
+        }
+      }
+      return -1;
+    }
+  }
+
+  private final LongAdder[] buckets = new LongAdder[BUCKETS];
+  private final LongAdder futureDated = new LongAdder();
+  private volatile long nowMillis = System.currentTimeMillis();
+
+  LagHistogram() {
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Reads the clock that the next events are measured against.
+   */
+  void tick() {
+    nowMillis = System.currentTimeMillis();
+  }
+
+  void record(long eventMillis) {
+    long lag = nowMillis - eventMillis;
+    if (lag < 0) {
+      futureDated.increment();
+    } else {
+      buckets[bucket(lag)].increment();
+    }
+  }
+
+  /**
+   * Takes the counts recorded since the last call.
+   */
+  Interval drain() {
+    long[] counts = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = buckets[i].sumThenReset();
+    }
+    return new Interval(counts, futureDated.sumThenReset());
+  }
+
+  static int bucket(long lagMillis) {
+    // The lowest bits are dropped, as many as there are above the sub-bucket bits, and the bucket is the power of
+    // two of what remains plus those bits
+    int shift = Math.max(0, Long.SIZE - SUB_BUCKET_BITS - 1 - Long.numberOfLeadingZeros(lagMillis));
+    int bucket = shift * SUB_BUCKETS + (int) (lagMillis >>> shift);
+    return Math.min(bucket, BUCKETS - 1);
+  }
+
+  static long upperBound(int bucket) {
+    int shift = Math.max(0, bucket / SUB_BUCKETS - 1);
+    long base = bucket - (long) shift * SUB_BUCKETS;
+    return ((base + 1) << shift) - 1;
+  }
+}
@@ -21,30 +21,50 @@ package org.logstash.filters;
 
 import org.joda.time.Instant;
 import org.logstash.Event;
+import org.logstash.Timestamp;
 import org.logstash.filters.parser.TimestampParser;
+import org.logstash.filters.parser.UnixEpochParser;
+import org.logstash.filters.parser.UnixMillisEpochParser;
 
 import java.io.IOException;
 import java.math.BigDecimal;
 
-class NumericParserExecutor implements ParserExecutor {
-  private TimestampParser parser;
+/**
+ * Executes an epoch parser in seconds or milliseconds, on text or numbers. Like in {@link TextParserExecutor}, the
+ * parser is kept in a field of its own class so that the call sites here are monomorphic.
+ */
+final class NumericParserExecutor implements ParserExecutor {
+  // Exactly one of these is set
+  private final UnixEpochParser seconds;
+  private final UnixMillisEpochParser millis;
+
   public NumericParserExecutor(TimestampParser parser) {
-    this.parser = parser;
+    this.seconds = parser instanceof UnixEpochParser ? (UnixEpochParser) parser : null;
+    this.millis = seconds == null ? (UnixMillisEpochParser) parser : null;
+  }
+
+  public Timestamp execute(Object input, Event event) throws IOException {
+    return new Timestamp(parse(input).getMillis());
   }
 
-  public Instant execute(Object input, Event event) throws IOException {
-    if (input instanceof String) {
-      return parser.parse((String) input);
+  private Instant parse(Object input) {
+    if (input instanceof CharSequence) {
+      return seconds != null ? seconds.parse((CharSequence) input) : millis.parse((CharSequence) input);
     } else if (input instanceof Long) {
-      return parser.parse((Long)input);
+      return seconds != null ? seconds.parse((Long) input) : millis.parse((Long) input);
     } else if (input instanceof Integer) {
-      return parser.parse(((Integer) input).longValue());
+      long value = ((Integer) input).longValue();
+      return seconds != null ? seconds.parse(value) : millis.parse(value);
     } else if (input instanceof Double) {
-      return parser.parse((Double) input);
+      return seconds != null ? seconds.parse((Double) input) : millis.parse((Double) input);
     } else if (input instanceof BigDecimal) {
-      return parser.parse((BigDecimal) input);
+      return seconds != null ? seconds.parse((BigDecimal) input) : millis.parse((BigDecimal) input);
     } else {
       throw new IllegalArgumentException("Cannot parse date for value of type " + input.getClass().getName());
     }
   }
+
+  public TimestampParser getParser() {
+    return seconds != null ? seconds : millis;
+  }
 }
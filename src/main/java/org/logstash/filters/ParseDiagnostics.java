@@ -0,0 +1,55 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters;
+
+/**
+ * Hooks for diagnosing the parsing from outside of Logstash, such as with Java Flight Recorder. They do nothing
+ * unless an implementation is available: the JFR one is only built and loaded on Java 11 and later, and its
+ * events are only created while they are enabled in a recording.
+ */
+interface ParseDiagnostics {
+  ParseDiagnostics NONE = new ParseDiagnostics() {};
+
+  ParseDiagnostics INSTANCE = load();
+
+  /**
+   * Returns a token to time the parse of a field with, or null when parse times are not recorded.
+   */
+  default Object startParse() {
+    return null;
+  }
+
+  default void endParse(Object token, String field, ParseExecutionResult result) {}
+
+  /**
+   * Called for every format that fails to parse a value.
+   */
+  default void failure(String field, String format, Object value, Exception e) {}
+
+  static ParseDiagnostics load() {
+    try {
+      Class.forName("jdk.jfr.FlightRecorder");
+      return (ParseDiagnostics) Class.forName("org.logstash.filters.JfrParseDiagnostics").getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+      // Java 8, or JFR left out of the runtime
+      return NONE;
+    }
+  }
+}
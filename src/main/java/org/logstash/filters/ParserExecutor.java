@@ -19,11 +19,28 @@
 
 package org.logstash.filters;
 
-import org.joda.time.Instant;
 import org.logstash.Event;
+import org.logstash.Timestamp;
+import org.logstash.filters.parser.TimestampParser;
 
 import java.io.IOException;
+import java.text.ParsePosition;
 
 interface ParserExecutor {
-  Instant execute(Object input, Event event) throws IOException;
+  Timestamp execute(Object input, Event event) throws IOException;
+
+  /**
+   * Parses the timestamp that starts at the index of the position in the text, and sets the index to where the
+   * timestamp ends. Only executors of a {@link org.logstash.filters.parser.PrefixParser} can.
+   */
+  default Timestamp executePrefix(String input, Event event, ParsePosition position) throws IOException {
+    throw new IllegalArgumentException(getParser().getClass().getSimpleName() + " cannot parse a timestamp followed by other text");
+  }
+
+  TimestampParser getParser();
+
+  /**
+   * Sets whatever a made-up event needs for this executor to parse it, such as the field a timezone is taken from.
+   */
+  default void prepareWarmupEvent(Event event) {}
 }
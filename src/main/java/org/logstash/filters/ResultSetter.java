@@ -19,9 +19,16 @@
 
 package org.logstash.filters;
 
-import org.joda.time.Instant;
 import org.logstash.Event;
+import org.logstash.Timestamp;
+
+import java.util.List;
 
 interface ResultSetter {
-  void set(Event event, Instant instant);
+  void set(Event event, Timestamp timestamp);
+
+  /**
+   * Stores the timestamps parsed from an array, in the same order and encoding.
+   */
+  void setAll(Event event, List<Timestamp> timestamps);
 }
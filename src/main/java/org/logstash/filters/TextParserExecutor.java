@@ -21,29 +21,93 @@ package org.logstash.filters;
 
 import org.joda.time.Instant;
 import org.logstash.Event;
+import org.logstash.Timestamp;
+import org.logstash.filters.parser.CasualISO8601Parser;
+import org.logstash.filters.parser.JodaParser;
 import org.logstash.filters.parser.TimestampParser;
 
 import java.io.IOException;
+import java.text.ParsePosition;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
-class TextParserExecutor implements ParserExecutor {
-  private InputHandler handler;
+/**
+ * Executes a parser of text, with a fixed timezone or one taken from the event.
+ *
+ * The parser is kept in a field of its own class, so that each call site here only ever sees one class of parser
+ * and the JIT can inline the parse into the executor, however many kinds of parsers the process has loaded.
+ */
+final class TextParserExecutor implements ParserExecutor {
+  private static final Pattern SINGLE_FIELD_REFERENCE = Pattern.compile("%\\{([^}]+)}");
+
+  private final TimestampParser parser;
+  // Exactly one of these is set
+  private final JodaParser joda;
+  private final CasualISO8601Parser iso;
+  private final TimestampParser other;
+  private final String timeZone;
+  private final boolean dynamicTimeZone;
 
   public TextParserExecutor(TimestampParser parser, String timeZone) {
-    if (timeZone != null && timeZone.contains("%{")) {
-      this.handler = new DynamicTzInputHandler(parser, timeZone);
-    } else {
-      this.handler = new StringInputHandler(parser);
-    }
+    this.parser = parser;
+    this.joda = parser instanceof JodaParser ? (JodaParser) parser : null;
+    this.iso = parser instanceof CasualISO8601Parser ? (CasualISO8601Parser) parser : null;
+    this.other = joda == null && iso == null ? parser : null;
+    this.timeZone = timeZone;
+    this.dynamicTimeZone = timeZone != null && timeZone.contains("%{");
   }
 
-  public Instant execute(Object input, Event event) throws IOException {
-    if (!(input instanceof String)) {
+  public Timestamp execute(Object input, Event event) throws IOException {
+    if (!(input instanceof CharSequence)) {
       throw new IllegalArgumentException("Cannot parse date for value of type " + input.getClass().getName());
     }
-    return this.execute((String) input, event);
+    return new Timestamp(parse((CharSequence) input, event).getMillis());
   }
 
-  private Instant execute(String input, Event event) throws IOException {
-    return this.handler.handle(input, event);
+  private Instant parse(CharSequence input, Event event) throws IOException {
+    if (dynamicTimeZone) {
+      String zone = event.sprintf(timeZone);
+      if (joda != null) {
+        return joda.parseWithTimeZone(input.toString(), zone);
+      }
+      return iso != null ? iso.parseWithTimeZone(input.toString(), zone) : other.parseWithTimeZone(input.toString(), zone);
+    }
+    if (joda != null) {
+      return joda.parse(input);
+    }
+    return iso != null ? iso.parse(input) : other.parse(input);
+  }
+
+  @Override
+  public Timestamp executePrefix(String input, Event event, ParsePosition position) throws IOException {
+    if (joda == null && iso == null) {
+      return ParserExecutor.super.executePrefix(input, event, position);
+    }
+    if (position.getIndex() > input.length()) {
+      throw new IllegalArgumentException("Cannot parse a timestamp at offset " + position.getIndex() + " of \"" + input + '"');
+    }
+    Instant instant;
+    if (dynamicTimeZone) {
+      String zone = event.sprintf(timeZone);
+      instant = joda != null ? joda.parsePrefixWithTimeZone(input, zone, position) : iso.parsePrefixWithTimeZone(input, zone, position);
+    } else {
+      instant = joda != null ? joda.parsePrefix(input, position) : iso.parsePrefix(input, position);
+    }
+    return new Timestamp(instant.getMillis());
+  }
+
+  public TimestampParser getParser() {
+    return parser;
+  }
+
+  @Override
+  public void prepareWarmupEvent(Event event) {
+    if (timeZone == null) {
+      return;
+    }
+    Matcher reference = SINGLE_FIELD_REFERENCE.matcher(timeZone);
+    if (reference.matches()) {
+      event.setField(reference.group(1), "UTC");
+    }
   }
 }
@@ -19,12 +19,18 @@
 
 package org.logstash.filters;
 
-import org.joda.time.Instant;
 import org.logstash.Event;
 import org.logstash.Timestamp;
 
-class TimestampSetter implements ResultSetter {
-  public void set(Event event, Instant instant) {
-    event.setTimestamp(new Timestamp(instant.getMillis()));
+import java.util.List;
+
+final class TimestampSetter implements ResultSetter {
+  public void set(Event event, Timestamp timestamp) {
+    event.setTimestamp(timestamp);
+  }
+
+  // Never called, FieldMatch fails array values before setting any target when one of them is @timestamp
+  public void setAll(Event event, List<Timestamp> timestamps) {
+    throw new IllegalArgumentException("@timestamp cannot hold an array of timestamps");
   }
 }
@@ -0,0 +1,55 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters;
+
+import org.logstash.Timestamp;
+
+import java.time.Instant;
+
+/**
+ * Builds and reads timestamps to the nanosecond on Logstash 8, whose {@link Timestamp} holds a {@link Instant}, and
+ * to the millisecond on Logstash 7, whose {@link Timestamp} holds a Joda {@code DateTime} and has neither
+ * {@code toInstant()} nor a constructor taking an {@link Instant}. Methods are only linked when they are first
+ * called, so the Logstash 8 ones are never linked on Logstash 7.
+ */
+final class Timestamps {
+  static final boolean NANOS = hasInstantMethods();
+
+  private Timestamps() {
+  }
+
+  static Timestamp of(Instant instant) {
+    return NANOS ? new Timestamp(instant) : new Timestamp(instant.toEpochMilli());
+  }
+
+  static Instant toInstant(Timestamp timestamp) {
+    return NANOS ? timestamp.toInstant() : Instant.ofEpochMilli(timestamp.toEpochMilli());
+  }
+
+  private static boolean hasInstantMethods() {
+    try {
+      Timestamp.class.getMethod("toInstant");
+      Timestamp.class.getConstructor(Instant.class);
+      return true;
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+}
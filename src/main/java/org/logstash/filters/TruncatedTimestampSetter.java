@@ -0,0 +1,56 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters;
+
+import org.logstash.Event;
+import org.logstash.FieldReference;
+import org.logstash.Timestamp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stores the timestamp truncated to the start of its minute, hour or day in UTC, for rollups.
+ */
+final class TruncatedTimestampSetter implements ResultSetter {
+  private final FieldReference target;
+  private final long unitMillis;
+
+  TruncatedTimestampSetter(String target, long unitMillis) {
+    this.target = FieldReference.from(target);
+    this.unitMillis = unitMillis;
+  }
+
+  public void set(Event event, Timestamp timestamp) {
+    event.setField(this.target, truncate(timestamp));
+  }
+
+  public void setAll(Event event, List<Timestamp> timestamps) {
+    List<Timestamp> truncated = new ArrayList<>(timestamps.size());
+    for (Timestamp timestamp : timestamps) {
+      truncated.add(truncate(timestamp));
+    }
+    event.setField(this.target, truncated);
+  }
+
+  private Timestamp truncate(Timestamp timestamp) {
+    return new Timestamp(Math.floorDiv(timestamp.toEpochMilli(), unitMillis) * unitMillis);
+  }
+}
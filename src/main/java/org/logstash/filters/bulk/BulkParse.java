@@ -0,0 +1,345 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters.bulk;
+
+import org.logstash.filters.Iso8601Formatter;
+import org.logstash.filters.parser.EpochNanosParser;
+import org.logstash.filters.parser.TimestampParser;
+import org.logstash.filters.parser.TimestampParserFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parses the timestamps of a newline-delimited file with the same parsers, and in the same order, as the date
+ * filter would, without running Logstash. The file is memory-mapped and parsed in chunks by several threads; each
+ * output line holds the epoch millis or the ISO8601 form of the matching input line, or is empty when no format
+ * matched.
+ */
+public final class BulkParse {
+  private static final long MAX_CHUNK_SIZE = 256L * 1024 * 1024;
+
+  enum Output { MILLIS, ISO8601 }
+
+  static final class Summary {
+    final long lines;
+    final long failures;
+    final long bytes;
+    final long nanos;
+
+    Summary(long lines, long failures, long bytes, long nanos) {
+      this.lines = lines;
+      this.failures = failures;
+      this.bytes = bytes;
+      this.nanos = nanos;
+    }
+
+    @Override
+    public String toString() {
+      double seconds = nanos / 1e9;
+      return String.format(Locale.ROOT, "parsed %d lines (%d failures) in %.3fs: %.0f lines/s, %.1f MB/s",
+              lines, failures, seconds, lines / seconds, bytes / seconds / (1024 * 1024));
+    }
+  }
+
+  private final List<TimestampParser> parsers = new ArrayList<>();
+  private final int field;
+  private final byte delimiter;
+  private final int prefixLength;
+  private final Output output;
+
+  BulkParse(List<String> formats, String locale, String timezone, int field, char delimiter, int prefixLength, Output output) {
+    if (timezone != null && timezone.contains("%{")) {
+      throw new IllegalArgumentException("Timezones taken from the event cannot be used outside of Logstash: " + timezone);
+    }
+    for (String format : formats) {
+      parsers.add(TimestampParserFactory.makeParser(format, locale, timezone));
+      // Same english fallback as the date filter offers for non-english platforms
+      if (locale == null && !"en".equals(Locale.getDefault().getLanguage()) && (format.contains("MMM") || format.contains("E"))) {
+        parsers.add(TimestampParserFactory.makeParser(format, "en-US", timezone));
+      }
+    }
+    this.field = field;
+    this.delimiter = (byte) delimiter;
+    this.prefixLength = prefixLength;
+    this.output = output;
+  }
+
+  Summary run(Path input, OutputStream out, int threads) throws IOException, InterruptedException {
+    long start = System.nanoTime();
+    long lines = 0;
+    long failures = 0;
+    long size;
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+      size = channel.size();
+      List<long[]> chunks = split(channel, size, threads);
+      Deque<Future<ChunkResult>> pending = new ArrayDeque<>();
+      int next = 0;
+      while (next < chunks.size() || !pending.isEmpty()) {
+        // Only a few chunks ahead of the writer are parsed, to bound the output held in memory
+        while (next < chunks.size() && pending.size() < threads * 2) {
+          long[] chunk = chunks.get(next++);
+          pending.add(pool.submit(() -> parseChunk(channel.map(FileChannel.MapMode.READ_ONLY, chunk[0], chunk[1] - chunk[0]))));
+        }
+        // Written in file order, so that output lines match input lines
+        ChunkResult chunkResult = pending.removeFirst().get();
+        chunkResult.output.writeTo(out);
+        lines += chunkResult.lines;
+        failures += chunkResult.failures;
+      }
+    } catch (ExecutionException e) {
+      throw new IOException("Failed to parse " + input, e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+    out.flush();
+    return new Summary(lines, failures, size, System.nanoTime() - start);
+  }
+
+  /*
+   * Splits the file in chunks that end right after a newline, with a few chunks per thread to even out the work.
+   */
+  private static List<long[]> split(FileChannel channel, long size, int threads) throws IOException {
+    long count = Math.max(threads * 4L, (size + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+    long target = Math.max(1, (size + count - 1) / count);
+    List<long[]> chunks = new ArrayList<>();
+    long start = 0;
+    while (start < size) {
+      long end = start + target >= size ? size : nextLineStart(channel, start + target, size);
+      chunks.add(new long[] { start, end });
+      start = end;
+    }
+    return chunks;
+  }
+
+  private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(4096);
+    while (position < size) {
+      buffer.clear();
+      int read = channel.read(buffer, position);
+      for (int i = 0; i < read; i++) {
+        if (buffer.get(i) == '\n') {
+          return position + i + 1;
+        }
+      }
+      position += read;
+    }
+    return size;
+  }
+
+  private static final class ChunkResult {
+    final ByteArrayOutputStream output;
+    final long lines;
+    final long failures;
+
+    ChunkResult(ByteArrayOutputStream output, long lines, long failures) {
+      this.output = output;
+      this.lines = lines;
+      this.failures = failures;
+    }
+  }
+
+  private ChunkResult parseChunk(MappedByteBuffer buffer) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(32, buffer.limit() / 2));
+    Iso8601Formatter formatter = new Iso8601Formatter();
+    LineSequence line = new LineSequence();
+    long lines = 0;
+    long failures = 0;
+    int limit = buffer.limit();
+    int position = 0;
+    while (position < limit) {
+      int endOfLine = position;
+      while (endOfLine < limit && buffer.get(endOfLine) != '\n') {
+        endOfLine++;
+      }
+      int end = endOfLine;
+      if (end > position && buffer.get(end - 1) == '\r') {
+        end--;
+      }
+
+      lines++;
+      if (!select(buffer, position, end, line) || !write(parse(line.isAscii() ? line : line.decode()), out, formatter)) {
+        failures++;
+      }
+      out.write('\n');
+      position = endOfLine + 1;
+    }
+    return new ChunkResult(out, lines, failures);
+  }
+
+  /*
+   * Points the line at the part of [start, end) that holds the timestamp, or returns false if the line has no such field.
+   */
+  private boolean select(ByteBuffer buffer, int start, int end, LineSequence line) {
+    if (field > 0) {
+      int current = 1;
+      int fieldStart = start;
+      for (int i = start; i < end && current < field; i++) {
+        if (buffer.get(i) == delimiter) {
+          current++;
+          fieldStart = i + 1;
+        }
+      }
+      if (current < field) {
+        return false;
+      }
+      int fieldEnd = fieldStart;
+      while (fieldEnd < end && buffer.get(fieldEnd) != delimiter) {
+        fieldEnd++;
+      }
+      start = fieldStart;
+      end = fieldEnd;
+    }
+    if (prefixLength > 0) {
+      end = Math.min(end, start + prefixLength);
+    }
+    line.set(buffer, start, end - start);
+    return true;
+  }
+
+  /*
+   * Epochs more precise than milliseconds keep their nanoseconds, as they do in the filter.
+   */
+  Instant parse(CharSequence text) {
+    for (TimestampParser parser : parsers) {
+      try {
+        if (parser instanceof EpochNanosParser) {
+          long nanos = ((EpochNanosParser) parser).parseNanos(text);
+          return Instant.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L), Math.floorMod(nanos, 1_000_000_000L));
+        }
+        return Instant.ofEpochMilli(parser.parse(text).getMillis());
+      } catch (IllegalArgumentException e) {
+        // try the next format, like the filter does
+      }
+    }
+    return null;
+  }
+
+  private boolean write(Instant instant, ByteArrayOutputStream out, Iso8601Formatter formatter) {
+    if (instant == null) {
+      return false;
+    }
+    if (output == Output.MILLIS) {
+      byte[] bytes = Long.toString(instant.toEpochMilli()).getBytes(StandardCharsets.US_ASCII);
+      out.write(bytes, 0, bytes.length);
+    } else {
+      out.write(formatter.buffer(), 0, formatter.format(instant.getEpochSecond(), instant.getNano()));
+    }
+    return true;
+  }
+
+  /*
+   * Lines are split on their bytes, so the delimiter must be a single ASCII character.
+   */
+  static char parseDelimiter(String value) {
+    if (value.length() != 1 || value.charAt(0) > 0x7f) {
+      throw new IllegalArgumentException("the delimiter must be one ASCII character: \"" + value + "\"");
+    }
+    return value.charAt(0);
+  }
+
+  private static void usage(String error) {
+    System.err.println(error);
+    System.err.println("usage: BulkParse --format <pattern> [--format <pattern>...] [options] <input file> <output file|->");
+    System.err.println("  --locale <tag>          locale of the formats, as in the date filter");
+    System.err.println("  --timezone <id>         timezone of the formats, as in the date filter");
+    System.err.println("  --field <n>             parse the n-th (1-based) field of each line instead of the whole line");
+    System.err.println("  --delimiter <char>      field delimiter, one ASCII character, tab by default");
+    System.err.println("  --prefix <n>            parse only the first n characters of the line or field");
+    System.err.println("  --output millis|iso8601 what to write for each line, millis by default");
+    System.err.println("  --threads <n>           number of parsing threads, one per processor by default");
+    System.exit(2);
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    List<String> formats = new ArrayList<>();
+    List<String> files = new ArrayList<>();
+    String locale = null;
+    String timezone = null;
+    int field = 0;
+    char delimiter = '\t';
+    int prefixLength = 0;
+    Output output = Output.MILLIS;
+    int threads = Runtime.getRuntime().availableProcessors();
+
+    try {
+      for (int i = 0; i < args.length; i++) {
+        String arg = args[i];
+        if (!arg.startsWith("--")) {
+          files.add(arg);
+          continue;
+        }
+        if (i + 1 >= args.length) {
+          usage("Missing value for " + arg);
+        }
+        String value = args[++i];
+        switch (arg) {
+          case "--format": formats.add(value); break;
+          case "--locale": locale = value; break;
+          case "--timezone": timezone = value; break;
+          case "--field": field = Integer.parseInt(value); break;
+          case "--delimiter": delimiter = parseDelimiter(value); break;
+          case "--prefix": prefixLength = Integer.parseInt(value); break;
+          case "--output": output = Output.valueOf(value.toUpperCase(Locale.ROOT)); break;
+          case "--threads": threads = Integer.parseInt(value); break;
+          default: usage("Unknown option " + arg);
+        }
+      }
+    } catch (IllegalArgumentException e) {
+      usage("Invalid option value: " + e.getMessage());
+    }
+    if (formats.isEmpty() || files.size() != 2 || threads < 1) {
+      usage("At least one format, one input file and one output file are required");
+    }
+
+    BulkParse bulkParse = new BulkParse(formats, locale, timezone, field, delimiter, prefixLength, output);
+    Path inputPath = Paths.get(files.get(0));
+    Summary summary;
+    // The standard output is flushed by run, but left open
+    if (files.get(1).equals("-")) {
+      summary = bulkParse.run(inputPath, System.out, threads);
+    } else {
+      try (OutputStream out = Files.newOutputStream(Paths.get(files.get(1)))) {
+        summary = bulkParse.run(inputPath, out, threads);
+      }
+    }
+    System.err.println(summary);
+  }
+}
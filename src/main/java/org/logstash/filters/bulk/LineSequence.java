@@ -0,0 +1,98 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters.bulk;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A reusable view over one line of a memory-mapped file, read as ASCII.
+ */
+final class LineSequence implements CharSequence {
+  private ByteBuffer buffer;
+  private int offset;
+  private int length;
+
+  LineSequence() {}
+
+  private LineSequence(ByteBuffer buffer, int offset, int length) {
+    set(buffer, offset, length);
+  }
+
+  void set(ByteBuffer buffer, int offset, int length) {
+    this.buffer = buffer;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  boolean isAscii() {
+    for (int i = offset; i < offset + length; i++) {
+      if (buffer.get(i) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (index < 0 || index >= length) {
+      throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+    }
+    return (char) buffer.get(offset + index);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    if (start < 0 || end > length || start > end) {
+      throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+    }
+    return new LineSequence(buffer, offset + start, end - start);
+  }
+
+  /**
+   * Decodes the line as UTF-8, for lines that are not plain ASCII.
+   */
+  String decode() {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = buffer.get(offset + i);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public String toString() {
+    return isAscii() ? decodeAscii() : decode();
+  }
+
+  private String decodeAscii() {
+    char[] chars = new char[length];
+    for (int i = 0; i < length; i++) {
+      chars[i] = (char) buffer.get(offset + i);
+    }
+    return new String(chars);
+  }
+}
@@ -0,0 +1,264 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters.parser;
+
+import org.joda.time.Instant;
+
+import java.math.BigDecimal;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Parses timestamps of an unknown format. The shape of the first inputs (epoch numbers, TAI64N, ISO8601, syslog,
+ * Apache or RFC 2822 dates) picks the parser for them, and once enough of them agree, the most common one among
+ * them, rather than the fastest, is used for every input. Other parsers are only considered again when an input
+ * fails to parse, and after repeated failures the format is detected anew.
+ *
+ * Epochs written as digits are never locked onto: every epoch parser accepts any number, so one locked to a unit
+ * would read epochs in another unit as wrong dates rather than fail. Their unit is told from their magnitude each
+ * time instead, as {@link UnixAutoEpochParser} does.
+ */
+public class AutoDetectParser implements TimestampParser {
+  static final int DETECTION_SAMPLES = 16;
+
+  private static final String MAX_EPOCH_SECONDS_TEXT = Long.toString(UnixAutoEpochParser.MAX_EPOCH_SECONDS);
+
+  // Candidates, from the cheapest to the most expensive to parse with
+  private static final int UNIX = 0;
+  private static final int UNIX_MS = 1;
+  private static final int UNIX_US = 2;
+  private static final int UNIX_NS = 3;
+  private static final int TAI64N = 4;
+  private static final int ISO8601 = 5;
+  private static final int SYSLOG = 6;
+  private static final int SYSLOG_PADDED = 7;
+  private static final int SYSLOG_WITH_YEAR = 8;
+  private static final int APACHE = 9;
+  private static final int RFC2822 = 10;
+  private static final int HTTP = 11;
+
+  // Numbers carry no format to detect, their magnitude tells their unit
+  private static final UnixAutoEpochParser EPOCHS = new UnixAutoEpochParser();
+
+  private final TimestampParser[] parsers;
+  private final AtomicIntegerArray votes;
+  private final AtomicInteger detected = new AtomicInteger();
+  private final AtomicInteger failures = new AtomicInteger();
+  private volatile TimestampParser locked;
+
+  public AutoDetectParser(String timezone) {
+    parsers = new TimestampParser[] {
+            new UnixEpochParser(),
+            new UnixMillisEpochParser(),
+            new ScaledEpochParser(1_000),
+            new ScaledEpochParser(1),
+            new TAI64NParser(),
+            new CasualISO8601Parser(timezone),
+            // These formats always name months and days in english
+            new JodaParser("MMM dd HH:mm:ss", Locale.US, timezone),
+            new JodaParser("MMM  d HH:mm:ss", Locale.US, timezone),
+            new JodaParser("MMM dd yyyy HH:mm:ss", Locale.US, timezone),
+            new JodaParser("dd/MMM/yyyy:HH:mm:ss Z", Locale.US, timezone),
+            new JodaParser("EEE, dd MMM yyyy HH:mm:ss Z", Locale.US, timezone),
+            new JodaParser("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US, "UTC")
+    };
+    votes = new AtomicIntegerArray(parsers.length);
+  }
+
+  @Override
+  public Instant parse(String value) {
+    return parse((CharSequence) value);
+  }
+
+  @Override
+  public Instant parse(CharSequence value) {
+    return parse(value, null);
+  }
+
+  @Override
+  public Instant parseWithTimeZone(String value, String timezone) {
+    return parse(value, timezone);
+  }
+
+  private Instant parse(CharSequence value, String timezone) {
+    TimestampParser current = locked;
+    if (current != null && !isNumber(value)) {
+      try {
+        Instant instant = parseWith(current, value, timezone);
+        if (failures.get() != 0) {
+          failures.set(0);
+        }
+        return instant;
+      } catch (IllegalArgumentException e) {
+        if (failures.incrementAndGet() >= DETECTION_SAMPLES) {
+          // The format has changed for good, start over
+          locked = null;
+          failures.set(0);
+        }
+      }
+    }
+
+    int candidate = classify(value);
+    if (candidate < 0) {
+      throw new IllegalArgumentException("Invalid format: \"" + value + "\" does not look like any known date format");
+    }
+    Instant instant = parseWith(parsers[candidate], value, timezone);
+    if (locked == null && candidate > UNIX_NS) {
+      vote(candidate);
+    }
+    return instant;
+  }
+
+  // Digits with at most one dot, which classify reads as an epoch in the unit of its magnitude
+  private static boolean isNumber(CharSequence value) {
+    int length = value.length();
+    boolean dot = false;
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c == '.' && !dot && i > 0) {
+        dot = true;
+      } else if (c < '0' || c > '9') {
+        return false;
+      }
+    }
+    return length > 0;
+  }
+
+  private static Instant parseWith(TimestampParser parser, CharSequence value, String timezone) {
+    return timezone == null ? parser.parse(value) : parser.parseWithTimeZone(value.toString(), timezone);
+  }
+
+  private void vote(int candidate) {
+    votes.incrementAndGet(candidate);
+    if (detected.incrementAndGet() == DETECTION_SAMPLES) {
+      int best = 0;
+      for (int i = 0; i < parsers.length; i++) {
+        if (votes.get(i) > votes.get(best)) {
+          best = i;
+        }
+        votes.set(i, 0);
+      }
+      locked = parsers[best];
+      detected.set(0);
+    }
+  }
+
+  /*
+   * Picks the parser for the shape of the value, or returns -1 when it looks like none of them.
+   */
+  static int classify(CharSequence value) {
+    int length = value.length();
+    if (length == 0) {
+      return -1;
+    }
+
+    int digits = countDigits(value, 0);
+    if (digits == length) {
+      // Same ranges as numbers get, decided on the number of digits
+      if (length < 10 || (length == 10 && compare(value, MAX_EPOCH_SECONDS_TEXT) <= 0)) {
+        return UNIX;
+      } else if (length <= 14) {
+        return UNIX_MS;
+      } else if (length <= 17) {
+        return UNIX_US;
+      } else if (length <= 19) {
+        return UNIX_NS;
+      }
+      return -1;
+    }
+    if (digits > 0 && digits <= 10 && value.charAt(digits) == '.' && countDigits(value, digits + 1) == length - digits - 1) {
+      return UNIX;
+    }
+    if ((length == 24 || (length == 25 && value.charAt(0) == '@')) && isHex(value, length - 24)) {
+      return TAI64N;
+    }
+    if (length >= 10 && digits == 4 && value.charAt(4) == '-' && countDigits(value, 5) == 2 && value.charAt(7) == '-') {
+      return ISO8601;
+    }
+    if (length >= 20 && digits == 2 && value.charAt(2) == '/' && isLetters(value, 3, 6) && value.charAt(6) == '/') {
+      return APACHE;
+    }
+    if (length >= 15 && isLetters(value, 0, 3)) {
+      if (value.charAt(3) == ',') {
+        return value.charAt(length - 1) == 'T' ? HTTP : RFC2822;
+      }
+      if (value.charAt(3) == ' ') {
+        if (value.charAt(4) == ' ') {
+          return SYSLOG_PADDED;
+        }
+        return length >= 20 && value.charAt(6) == ' ' && countDigits(value, 7) == 4 ? SYSLOG_WITH_YEAR : SYSLOG;
+      }
+    }
+    return -1;
+  }
+
+  private static int compare(CharSequence value, String other) {
+    for (int i = 0; i < other.length(); i++) {
+      int difference = value.charAt(i) - other.charAt(i);
+      if (difference != 0) {
+        return difference;
+      }
+    }
+    return 0;
+  }
+
+  private static int countDigits(CharSequence value, int from) {
+    int i = from;
+    while (i < value.length() && value.charAt(i) >= '0' && value.charAt(i) <= '9') {
+      i++;
+    }
+    return i - from;
+  }
+
+  private static boolean isHex(CharSequence value, int from) {
+    for (int i = from; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F'))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isLetters(CharSequence value, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (!Character.isLetter(value.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public Instant parse(Long value) {
+    return EPOCHS.parse(value);
+  }
+
+  @Override
+  public Instant parse(Double value) {
+    return EPOCHS.parse(value);
+  }
+
+  @Override
+  public Instant parse(BigDecimal value) {
+    return EPOCHS.parse(value);
+  }
+}
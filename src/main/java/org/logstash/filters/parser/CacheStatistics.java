@@ -0,0 +1,56 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters.parser;
+
+/**
+ * Statistics of the caches of the parsers, for diagnostics.
+ */
+public final class CacheStatistics {
+  private CacheStatistics() {}
+
+  /**
+   * Parsers shared by the filters of the process, see {@link TimestampParserFactory}.
+   */
+  public static int sharedParsers() {
+    return TimestampParserFactory.sharedParserCount();
+  }
+
+  /**
+   * Turns the counting of the zone cache hits and misses on or off. It is off by default, so that parses pay for
+   * it only while the statistics are recorded.
+   */
+  public static void countZoneCache(boolean enabled) {
+    ZoneTokenParser.counting = enabled;
+  }
+
+  /**
+   * Zone IDs and names found among the last ones seen while counting, see {@link ZoneTokenParser}.
+   */
+  public static long zoneCacheHits() {
+    return ZoneTokenParser.HITS.sum();
+  }
+
+  /**
+   * Zone IDs and names that had to be looked up in the trie while counting.
+   */
+  public static long zoneCacheMisses() {
+    return ZoneTokenParser.MISSES.sum();
+  }
+}
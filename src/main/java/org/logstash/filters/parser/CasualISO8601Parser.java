@@ -19,21 +19,35 @@
 
 package org.logstash.filters.parser;
 
+import org.joda.time.Chronology;
 import org.joda.time.DateTimeZone;
 import org.joda.time.Instant;
+import org.joda.time.chrono.ISOChronology;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISODateTimeFormat;
 
+import java.text.ParsePosition;
 import java.util.Arrays;
 import java.math.BigDecimal;
 
 /**
  * Created by jls on 11/2/16.
  */
-public class CasualISO8601Parser implements TimestampParser {
+public class CasualISO8601Parser implements PrefixParser {
   private static final DateTimeFormatter[] baseParsers;
   private final DateTimeFormatter[] parsers;
+  private final FormatterParsing[] parsings;
+
+  // The most common shape, yyyy-MM-ddTHH:mm:ss[.fraction][Z|+HH:mm|+HHmm], is read without Joda: the first
+  // sixteen characters as two words of eight, with the separators in these bytes
+  private static final long DATE_SEPARATORS_MASK = 0xFF0000FF00000000L;
+  private static final long DATE_SEPARATORS = ((long) '-' << 32) | ((long) '-' << 56);
+  private static final long TIME_SEPARATORS_MASK = 0x0000FF0000FF0000L;
+  private static final long TIME_SEPARATORS = ((long) 'T' << 16) | ((long) ':' << 40);
+  private static final int[] MILLIS_PER_FRACTION_DIGIT = { 0, 100, 10, 1 };
+  private static final long NOT_CANONICAL = Long.MIN_VALUE;
+  private static final Chronology UTC = ISOChronology.getInstanceUTC();
 
   static {
     baseParsers = new DateTimeFormatter[] {
@@ -45,23 +59,39 @@ public class CasualISO8601Parser implements TimestampParser {
     };
   }
 
-  private String timeZone;
+  private final String timeZone;
+  private final Chronology chronology;
 
   public CasualISO8601Parser(String timeZone) {
     this.timeZone = timeZone;
+    this.chronology = timeZone == null ? null : ISOChronology.getInstance(ZonePreload.forID(timeZone));
     if (timeZone == null) {
       parsers = baseParsers;
     } else {
-      parsers = Arrays.stream(baseParsers).map(p -> p.withZone(DateTimeZone.forID(timeZone))).toArray(DateTimeFormatter[]::new);
+      parsers = Arrays.stream(baseParsers).map(p -> p.withZone(ZonePreload.forID(timeZone))).toArray(DateTimeFormatter[]::new);
     }
+    parsings = Arrays.stream(parsers).map(FormatterParsing::new).toArray(FormatterParsing[]::new);
+  }
+
+  DateTimeFormatter[] getFormatters() {
+    return parsers;
   }
 
   @Override
   public Instant parse(String value) {
+    return parse((CharSequence) value);
+  }
+
+  @Override
+  public Instant parse(CharSequence value) {
+    long millis = parseCanonical(value, null);
+    if (millis != NOT_CANONICAL) {
+      return new Instant(millis);
+    }
     RuntimeException lastException = null;
-    for (DateTimeFormatter parser : parsers) {
+    for (FormatterParsing parsing : parsings) {
       try {
-        return new Instant(parser.parseMillis(value));
+        return new Instant(parsing.parseMillis(value));
       } catch (IllegalArgumentException e) {
         lastException = e;
       }
@@ -70,6 +100,126 @@ public class CasualISO8601Parser implements TimestampParser {
     throw lastException;
   }
 
+  @Override
+  public Instant parsePrefix(String value, ParsePosition position) {
+    long millis = parseCanonical(value, position);
+    if (millis != NOT_CANONICAL) {
+      return new Instant(millis);
+    }
+    return parsePrefix(value, null, position);
+  }
+
+  @Override
+  public Instant parsePrefixWithTimeZone(String value, String timezone, ParsePosition position) {
+    return parsePrefix(value, ZonePreload.forID(timezone), position);
+  }
+
+  /*
+   * A formatter can parse a shorter prefix than another, like the date alone of a date and time, so the one that
+   * reads the most text wins, the first one on a tie.
+   */
+  private Instant parsePrefix(String value, DateTimeZone zone, ParsePosition position) {
+    int start = position.getIndex();
+    int longest = -1;
+    long longestMillis = 0;
+    RuntimeException lastException = null;
+    for (FormatterParsing parsing : parsings) {
+      try {
+        position.setIndex(start);
+        long millis = parsing.parseMillis(value, zone, position);
+        if (position.getIndex() > longest) {
+          longest = position.getIndex();
+          longestMillis = millis;
+        }
+      } catch (IllegalArgumentException e) {
+        lastException = e;
+      }
+    }
+    if (longest < 0) {
+      throw lastException;
+    }
+    position.setIndex(longest);
+    return new Instant(longestMillis);
+  }
+
+  /*
+   * Parses values of the most common shape, or returns NOT_CANONICAL for any other value, including invalid
+   * dates, leaving the parsing and the errors to the Joda formatters. With a position, the value is read from its
+   * index up to the next whitespace, and the index is set to where it ends.
+   */
+  private long parseCanonical(CharSequence value, ParsePosition end) {
+    int from = end == null ? 0 : end.getIndex();
+    if (value.length() - from < 19 || value.charAt(from + 16) != ':') {
+      return NOT_CANONICAL;
+    }
+    long date = Digits.parse(value, from, DATE_SEPARATORS_MASK, DATE_SEPARATORS);
+    long dayAndTime = Digits.parse(value, from + 8, TIME_SEPARATORS_MASK, TIME_SEPARATORS);
+    long second = Digits.parse(value, from + 17, from + 19);
+    if (date == Digits.INVALID || dayAndTime == Digits.INVALID || second == Digits.INVALID) {
+      return NOT_CANONICAL;
+    }
+
+    int length = end == null ? value.length() : endOfWord(value, from + 19);
+    int position = from + 19;
+    long millis = 0;
+    if (position < length && value.charAt(position) == '.') {
+      int start = ++position;
+      while (position < length && value.charAt(position) >= '0' && value.charAt(position) <= '9') {
+        position++;
+      }
+      int digits = position - start;
+      if (digits == 0 || digits > 9) {
+        return NOT_CANONICAL;
+      }
+      // Truncated to milliseconds, like Joda does
+      int millisDigits = Math.min(3, digits);
+      millis = Digits.parse(value, start, start + millisDigits) * MILLIS_PER_FRACTION_DIGIT[millisDigits];
+    }
+
+    Chronology chrono;
+    long offset = 0;
+    if (position == length) {
+      chrono = chronology == null ? ISOChronology.getInstance() : chronology;
+    } else {
+      char sign = value.charAt(position);
+      int offsetLength = length - position;
+      if (sign == 'Z' && offsetLength == 1) {
+        offset = 0;
+      } else if ((sign == '+' || sign == '-') && (offsetLength == 5 || (offsetLength == 6 && value.charAt(position + 3) == ':'))) {
+        long hours = Digits.parse(value, position + 1, position + 3);
+        long minutes = Digits.parse(value, length - 2, length);
+        if (hours == Digits.INVALID || minutes == Digits.INVALID || hours > 23 || minutes > 59) {
+          return NOT_CANONICAL;
+        }
+        offset = (hours * 60 + minutes) * 60_000 * (sign == '-' ? -1 : 1);
+      } else {
+        return NOT_CANONICAL;
+      }
+      chrono = UTC;
+    }
+
+    long result;
+    try {
+      // date is yyyy0MM0 and dayAndTime is dd0HH0mm, the separators being read as zeros
+      result = chrono.getDateTimeMillis((int) (date / 10_000), (int) (date / 10 % 100), (int) (dayAndTime / 1_000_000),
+              (int) (dayAndTime / 1_000 % 100), (int) (dayAndTime % 100), (int) second, (int) millis) - offset;
+    } catch (IllegalArgumentException e) {
+      return NOT_CANONICAL;
+    }
+    if (end != null) {
+      end.setIndex(length);
+    }
+    return result;
+  }
+
+  private static int endOfWord(CharSequence value, int from) {
+    int end = from;
+    while (end < value.length() && !Character.isWhitespace(value.charAt(end))) {
+      end++;
+    }
+    return end;
+  }
+
   @Override
   public Instant parse(Long value) {
     throw new IllegalArgumentException("Expected a string value, but got a long (" + value + "). Cannot parse date.");
@@ -87,12 +237,11 @@ public class CasualISO8601Parser implements TimestampParser {
 
   @Override
   public Instant parseWithTimeZone(String value, String timezone) {
-    DateTimeZone tz = DateTimeZone.forID(timezone);
+    DateTimeZone tz = ZonePreload.forID(timezone);
     RuntimeException lastException = null;
-    for (DateTimeFormatter parser : parsers) {
+    for (FormatterParsing parsing : parsings) {
       try {
-        DateTimeFormatter parserWithZone = parser.withZone(tz);
-        return new Instant(parserWithZone.parseMillis(value));
+        return new Instant(parsing.parseMillis(value, tz));
       } catch (IllegalArgumentException e) {
         lastException = e;
       }
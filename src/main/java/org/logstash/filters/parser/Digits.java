@@ -0,0 +1,115 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters.parser;
+
+/**
+ * Reads runs of ASCII digits eight at a time: the eight characters are loaded into the bytes of a {@code long},
+ * which is then checked and converted with a few operations on the whole word instead of one character after
+ * another (SWAR, for SIMD within a register).
+ */
+final class Digits {
+  /**
+   * Returned by {@link #parse} for text that is not a plain run of digits.
+   */
+  static final long INVALID = -1;
+
+  private static final long HIGH_NIBBLES = 0xF0F0F0F0F0F0F0F0L;
+  private static final long LOW_NIBBLES = 0x0F0F0F0F0F0F0F0FL;
+  private static final long ALL_THREES = 0x3333333333333333L;
+  private static final long ALL_SIXES = 0x0606060606060606L;
+  private static final long ALL_ZEROS = 0x3030303030303030L;
+  // More digits could overflow a long
+  private static final int MAX_DIGITS = 18;
+
+  private Digits() {}
+
+  /**
+   * Returns the value of the digits in {@code [from, to)} of the text, or {@link #INVALID} when it is empty, holds
+   * anything else than the ASCII digits 0 to 9, or is more than 18 digits long. Callers fall back to their usual
+   * parsing for those, which keeps their behavior with signs or other inputs.
+   */
+  static long parse(CharSequence text, int from, int to) {
+    int length = to - from;
+    if (length <= 0 || length > MAX_DIGITS) {
+      return INVALID;
+    }
+    long value = 0;
+    int i = from;
+    for (; to - i >= 8; i += 8) {
+      long word = load(text, i);
+      if (!isEightDigits(word)) {
+        return INVALID;
+      }
+      value = value * 100_000_000 + eightDigits(word);
+    }
+    for (; i < to; i++) {
+      int digit = text.charAt(i) - '0';
+      if (digit < 0 || digit > 9) {
+        return INVALID;
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+  /**
+   * Returns the value of the eight characters at {@code from}, read as digits except for the bytes of the mask,
+   * which must hold the given separators and count as 0 digits, or {@link #INVALID} when the separators or the
+   * digits are not there. The text must have eight characters from {@code from}.
+   */
+  static long parse(CharSequence text, int from, long separatorMask, long separators) {
+    long word = load(text, from);
+    if ((word & separatorMask) != separators) {
+      return INVALID;
+    }
+    word = (word & ~separatorMask) | (ALL_ZEROS & separatorMask);
+    return isEightDigits(word) ? eightDigits(word) : INVALID;
+  }
+
+  /**
+   * Loads eight characters into a word, the first one in the lowest byte. Characters beyond ASCII are loaded as
+   * 0x7F, which is not a digit either.
+   */
+  static long load(CharSequence text, int from) {
+    long word = 0;
+    for (int i = 0; i < 8; i++) {
+      word |= (long) Math.min(text.charAt(from + i), 0x7F) << (i << 3);
+    }
+    return word;
+  }
+
+  /**
+   * Checks that every byte of a word loaded by {@link #load} is between '0' (0x30) and '9' (0x39): the high nibble
+   * of the byte is 3, and adding 6 to it does not carry into the high nibble.
+   */
+  static boolean isEightDigits(long word) {
+    return ((word & HIGH_NIBBLES) | (((word + ALL_SIXES) & HIGH_NIBBLES) >>> 4)) == ALL_THREES;
+  }
+
+  /**
+   * Converts the eight digits of a word loaded by {@link #load}, by combining them in pairs, then the pairs in
+   * fours, then the fours.
+   */
+  static int eightDigits(long word) {
+    word = ((word & LOW_NIBBLES) * (1 + (10 << 8))) >>> 8;
+    word = ((word & 0x00FF00FF00FF00FFL) * (1 + (100 << 16))) >>> 16;
+    return (int) (((word & 0x0000FFFF0000FFFFL) * (1 + (10_000L << 32))) >>> 32);
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters.parser;
+
+import org.joda.time.Instant;
+
+import java.math.BigDecimal;
+
+/**
+ * Parses epochs that can be more precise than milliseconds. The {@link TimestampParser} methods give the result
+ * truncated to milliseconds, the {@code parseNanos} methods give it in nanoseconds since the epoch.
+ */
+public interface EpochNanosParser extends TimestampParser {
+  long parseNanos(CharSequence value);
+  long parseNanos(long value);
+  long parseNanos(double value);
+  long parseNanos(BigDecimal value);
+
+  @Override
+  default Instant parse(String value) {
+    return parse((CharSequence) value);
+  }
+
+  @Override
+  default Instant parse(CharSequence value) {
+    return toInstant(parseNanos(value));
+  }
+
+  @Override
+  default Instant parse(Long value) {
+    return toInstant(parseNanos(value));
+  }
+
+  @Override
+  default Instant parse(Double value) {
+    return toInstant(parseNanos(value));
+  }
+
+  @Override
+  default Instant parse(BigDecimal value) {
+    return toInstant(parseNanos(value));
+  }
+
+  @Override
+  default Instant parseWithTimeZone(String value, String timezone) {
+    return parse(value);
+  }
+
+  static Instant toInstant(long nanos) {
+    return new Instant(Math.floorDiv(nanos, 1_000_000L));
+  }
+
+  /*
+   * Multiplies epoch units to nanoseconds, failing like a parse would when they are out of range.
+   */
+  static long scale(long units, long nanosPerUnit) {
+    long limit = Long.MAX_VALUE / nanosPerUnit;
+    if (nanosPerUnit != 1 && (units >= limit || units <= -limit)) {
+      throw new IllegalArgumentException("Cannot parse date for value out of the range of nanosecond epochs: " + units);
+    }
+    return units * nanosPerUnit;
+  }
+
+  /*
+   * Doubles hold epochs to a fraction of a microsecond at best, so they are rounded to the microsecond, or to the
+   * unit when it is smaller.
+   */
+  static long scale(double units, long nanosPerUnit) {
+    double nanos = units * nanosPerUnit;
+    if (!(Math.abs(nanos) < Long.MAX_VALUE)) {
+      throw new IllegalArgumentException("Cannot parse date for value out of the range of nanosecond epochs: " + units);
+    }
+    return nanosPerUnit >= 1_000 ? Math.round(units * (nanosPerUnit / 1_000)) * 1_000 : Math.round(nanos);
+  }
+}
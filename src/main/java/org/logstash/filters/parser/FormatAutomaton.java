@@ -0,0 +1,307 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters.parser;
+
+import org.joda.time.DateTimeZone;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * All the formats of a field compiled into one automaton, which reads a value once to tell which of the formats
+ * could parse it, so that the others are not even tried. The automaton accepts a superset of what each format
+ * parses: it only follows the shape of the pattern, with literals, numbers, names and zones, leaving the checks
+ * of the values to the parsers. Formats without a pattern to follow, like the epochs or AUTO, are always tried.
+ */
+public final class FormatAutomaton {
+  /**
+   * The most formats an automaton handles, one bit of a long each.
+   */
+  public static final int MAX_FORMATS = Long.SIZE;
+
+  private static final int ASCII = 128;
+  private static final boolean[] ZONE_ID_CHARS = new boolean[ASCII];
+  private static final String ISO8601_CHARS = "0123456789-+:.,TWZtwz ";
+
+  static {
+    for (String id : DateTimeZone.getAvailableIDs()) {
+      for (int i = 0; i < id.length(); i++) {
+        if (id.charAt(i) < ASCII) {
+          ZONE_ID_CHARS[id.charAt(i)] = true;
+        }
+      }
+    }
+  }
+
+  private enum Kind { LITERAL, NUMBER, TEXT, OFFSET, ZONE_ID, ISO8601 }
+
+  private static final class Element {
+    final Kind kind;
+    final char literal;
+
+    Element(Kind kind, char literal) {
+      this.kind = kind;
+      this.literal = literal;
+    }
+
+    boolean isRun() {
+      return kind != Kind.LITERAL;
+    }
+
+    boolean first(char c) {
+      return kind == Kind.NUMBER ? isDigit(c) || c == '+' || c == '-' : next(c);
+    }
+
+    boolean next(char c) {
+      switch (kind) {
+        case LITERAL:
+          // Joda compares literals ignoring case
+          return c == literal || Character.toUpperCase(c) == Character.toUpperCase(literal)
+                  || Character.toLowerCase(c) == Character.toLowerCase(literal);
+        case NUMBER:
+          return isDigit(c);
+        case TEXT:
+          return true;
+        case OFFSET:
+          return isDigit(c) || c == '+' || c == '-' || c == ':' || c == '.' || c == 'Z' || c == 'z';
+        case ZONE_ID:
+          return c < ASCII && ZONE_ID_CHARS[c];
+        default:
+          return ISO8601_CHARS.indexOf(c) >= 0;
+      }
+    }
+
+    private static boolean isDigit(char c) {
+      return c >= '0' && c <= '9';
+    }
+  }
+
+  private final int formats;
+  private final long alwaysCandidates;
+  private final int words;
+  // Format f has the bits [base, base + elements] of its word, bit base + k meaning its first k elements matched
+  private final int[] word;
+  private final int[] base;
+  private final Element[][] elements;
+  private final long[] start;
+  // For each ASCII char and word, the states that stay on (runs that go on) and that move on to the next element
+  private final long[] stay;
+  private final long[] advance;
+  private final ThreadLocal<long[]> scratch;
+
+  private FormatAutomaton(List<Element[]> shapes) {
+    formats = shapes.size();
+    word = new int[formats];
+    base = new int[formats];
+    elements = shapes.toArray(new Element[0][]);
+    long always = 0;
+    int currentWord = 0;
+    int nextBit = 0;
+    for (int f = 0; f < formats; f++) {
+      if (elements[f] == null) {
+        always |= 1L << f;
+        continue;
+      }
+      int bits = elements[f].length + 1;
+      if (nextBit + bits > Long.SIZE) {
+        currentWord++;
+        nextBit = 0;
+      }
+      word[f] = currentWord;
+      base[f] = nextBit;
+      nextBit += bits;
+    }
+    alwaysCandidates = always;
+    words = currentWord + 1;
+
+    start = new long[words];
+    for (int f = 0; f < formats; f++) {
+      if (elements[f] != null) {
+        start[word[f]] |= 1L << base[f];
+      }
+    }
+    stay = new long[ASCII * words];
+    advance = new long[ASCII * words];
+    for (char c = 0; c < ASCII; c++) {
+      transitions(c, stay, c * words, advance, c * words);
+    }
+    final int size = words;
+    scratch = ThreadLocal.withInitial(() -> new long[size * 3]);
+  }
+
+  /**
+   * Returns the automaton of the given formats, or null when none of them has a shape to follow or there are too
+   * many of them.
+   */
+  public static FormatAutomaton of(List<TimestampParser> parsers) {
+    if (parsers.size() > MAX_FORMATS) {
+      return null;
+    }
+    List<Element[]> shapes = new ArrayList<>();
+    boolean any = false;
+    for (TimestampParser parser : parsers) {
+      Element[] shape = shapeOf(parser);
+      any |= shape != null;
+      shapes.add(shape);
+    }
+    return any ? new FormatAutomaton(shapes) : null;
+  }
+
+  /**
+   * Returns the formats that could parse the value, format i being bit i.
+   */
+  public long candidates(CharSequence value) {
+    long[] states = scratch.get();
+    System.arraycopy(start, 0, states, 0, words);
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      long[] stayOn = stay;
+      long[] moveOn = advance;
+      int stayAt = c * words;
+      int moveAt = c * words;
+      if (c >= ASCII) {
+        // Rare enough to be worked out on the fly
+        transitions(c, states, words, states, words * 2);
+        stayOn = states;
+        moveOn = states;
+        stayAt = words;
+        moveAt = words * 2;
+      }
+      long any = 0;
+      for (int w = 0; w < words; w++) {
+        long current = states[w];
+        states[w] = (current & stayOn[stayAt + w]) | ((current & moveOn[moveAt + w]) << 1);
+        any |= states[w];
+      }
+      if (any == 0) {
+        return alwaysCandidates;
+      }
+    }
+
+    long candidates = alwaysCandidates;
+    for (int f = 0; f < formats; f++) {
+      if (elements[f] != null && (states[word[f]] & (1L << (base[f] + elements[f].length))) != 0) {
+        candidates |= 1L << f;
+      }
+    }
+    return candidates;
+  }
+
+  private void transitions(char c, long[] stayOut, int stayAt, long[] advanceOut, int advanceAt) {
+    for (int w = 0; w < words; w++) {
+      stayOut[stayAt + w] = 0;
+      advanceOut[advanceAt + w] = 0;
+    }
+    for (int f = 0; f < formats; f++) {
+      Element[] shape = elements[f];
+      if (shape == null) {
+        continue;
+      }
+      for (int k = 0; k <= shape.length; k++) {
+        long bit = 1L << (base[f] + k);
+        if (k > 0 && shape[k - 1].isRun() && shape[k - 1].next(c)) {
+          stayOut[stayAt + word[f]] |= bit;
+        }
+        if (k < shape.length && shape[k].first(c)) {
+          advanceOut[advanceAt + word[f]] |= bit;
+        }
+      }
+    }
+  }
+
+  private static Element[] shapeOf(TimestampParser parser) {
+    if (parser instanceof JodaParser) {
+      Element[] shape = shapeOf(((JodaParser) parser).getPattern());
+      return shape != null && shape.length < Long.SIZE ? shape : null;
+    }
+    if (parser instanceof CasualISO8601Parser) {
+      return new Element[] { new Element(Kind.ISO8601, (char) 0) };
+    }
+    return null;
+  }
+
+  /*
+   * The shape of a Joda pattern, or null for patterns it cannot follow.
+   */
+  static Element[] shapeOf(String pattern) {
+    List<Element> shape = new ArrayList<>();
+    int i = 0;
+    while (i < pattern.length()) {
+      char c = pattern.charAt(i);
+      if (c == '\'') {
+        // Quoted text, with '' for a quote
+        int end = i + 1;
+        if (end < pattern.length() && pattern.charAt(end) == '\'') {
+          shape.add(new Element(Kind.LITERAL, '\''));
+          i = end + 1;
+          continue;
+        }
+        while (true) {
+          if (end >= pattern.length()) {
+            return null;
+          }
+          if (pattern.charAt(end) == '\'') {
+            if (end + 1 < pattern.length() && pattern.charAt(end + 1) == '\'') {
+              shape.add(new Element(Kind.LITERAL, '\''));
+              end += 2;
+              continue;
+            }
+            break;
+          }
+          shape.add(new Element(Kind.LITERAL, pattern.charAt(end)));
+          end++;
+        }
+        i = end + 1;
+        continue;
+      }
+      if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'))) {
+        shape.add(new Element(Kind.LITERAL, c));
+        i++;
+        continue;
+      }
+      int end = i;
+      while (end < pattern.length() && pattern.charAt(end) == c) {
+        end++;
+      }
+      int length = end - i;
+      Kind kind;
+      switch (c) {
+        case 'C': case 'Y': case 'x': case 'y': case 'd': case 'D': case 'e': case 'h': case 'H':
+        case 'k': case 'K': case 'm': case 's': case 'S': case 'w':
+          kind = Kind.NUMBER;
+          break;
+        case 'M':
+          kind = length >= 3 ? Kind.TEXT : Kind.NUMBER;
+          break;
+        case 'G': case 'E': case 'a': case 'z':
+          kind = Kind.TEXT;
+          break;
+        case 'Z':
+          kind = length >= 3 ? Kind.ZONE_ID : Kind.OFFSET;
+          break;
+        default:
+          return null;
+      }
+      shape.add(new Element(kind, (char) 0));
+      i = end;
+    }
+    return shape.toArray(new Element[0]);
+  }
+}
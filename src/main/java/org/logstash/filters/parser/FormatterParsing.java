@@ -0,0 +1,131 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters.parser;
+
+import org.joda.time.Chronology;
+import org.joda.time.DateTimeUtils;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.DateTimeParser;
+import org.joda.time.format.DateTimeParserBucket;
+
+import java.text.ParsePosition;
+
+/**
+ * Parses with a Joda {@link DateTimeFormatter} into a bucket that each thread reuses, where the formatter allocates
+ * a new bucket and its saved fields for every parse. Also parses any {@link CharSequence}, where the formatter only
+ * accepts {@link String} input. Behaves exactly like the formatter's own {@code parseMillis} and
+ * {@code parseLocalDateTime}, or like its {@code parseInto} with a position, where text may follow the timestamp.
+ */
+final class FormatterParsing {
+  private final DateTimeFormatter formatter;
+  private final DateTimeParser parser;
+  private final ThreadLocal<DateTimeParserBucket> buckets;
+
+  FormatterParsing(DateTimeFormatter formatter) {
+    this.formatter = formatter;
+    this.parser = formatter.getParser();
+    Chronology chrono = DateTimeUtils.getChronology(formatter.getChronology());
+    DateTimeZone zone = formatter.getZone();
+    Chronology bucketChrono = zone != null ? chrono.withZone(zone) : chrono;
+    this.buckets = ThreadLocal.withInitial(() -> new DateTimeParserBucket(0, bucketChrono, formatter.getLocale(),
+            formatter.getPivotYear(), formatter.getDefaultYear()));
+  }
+
+  DateTimeFormatter getFormatter() {
+    return formatter;
+  }
+
+  /*
+   * Like DateTimeFormatter#parseMillis
+   */
+  long parseMillis(CharSequence text) {
+    // Resets the bucket before parsing
+    return buckets.get().parseMillis(parser, text);
+  }
+
+  /*
+   * Like DateTimeFormatter#withZone(zone)#parseMillis, without a formatter or a bucket for the zone
+   */
+  long parseMillis(String text, DateTimeZone zone) {
+    return parseMillis(text, zone, null);
+  }
+
+  /*
+   * With a position, parses from its index and sets the index to where the parse ended. A null zone is the one of
+   * the formatter.
+   */
+  long parseMillis(String text, DateTimeZone zone, ParsePosition position) {
+    DateTimeParserBucket bucket = buckets.get();
+    bucket.reset();
+    if (zone != null) {
+      bucket.setZone(zone);
+    }
+    int end = parseInto(bucket, text, position);
+    long millis = bucket.computeMillis(true, text);
+    if (position != null) {
+      position.setIndex(end);
+    }
+    return millis;
+  }
+
+  /*
+   * Like DateTimeFormatter#parseLocalDateTime(text)#getLocalMillis, for a formatter in UTC: the time in the parsed
+   * zone if any. Takes a position like parseMillis.
+   */
+  long parseLocalMillis(String text, ParsePosition position) {
+    DateTimeParserBucket bucket = buckets.get();
+    bucket.reset();
+    int end = parseInto(bucket, text, position);
+    long millis = bucket.computeMillis(true, text);
+    if (bucket.getOffsetInteger() != null) {
+      millis += bucket.getOffsetInteger();
+    } else if (bucket.getZone() != null) {
+      millis = bucket.getZone().convertUTCToLocal(millis);
+    }
+    if (position != null) {
+      position.setIndex(end);
+    }
+    return millis;
+  }
+
+  // Without a position, the whole text must be parsed
+  private int parseInto(DateTimeParserBucket bucket, String text, ParsePosition position) {
+    int end = parser.parseInto(bucket, text, position == null ? 0 : position.getIndex());
+    if (end < 0) {
+      throw invalidFormat(text, ~end);
+    } else if (position == null && end < text.length()) {
+      throw invalidFormat(text, end);
+    }
+    return end;
+  }
+
+  // The message of Joda's own parse errors
+  private static IllegalArgumentException invalidFormat(String text, int errorPosition) {
+    int sampleLength = errorPosition + 32;
+    String sample = text.length() <= sampleLength + 3 ? text : text.substring(0, sampleLength).concat("...");
+    if (errorPosition <= 0) {
+      return new IllegalArgumentException("Invalid format: \"" + sample + '"');
+    } else if (errorPosition >= text.length()) {
+      return new IllegalArgumentException("Invalid format: \"" + sample + "\" is too short");
+    }
+    return new IllegalArgumentException("Invalid format: \"" + sample + "\" is malformed at \"" + sample.substring(errorPosition) + '"');
+  }
+}
@@ -19,20 +19,36 @@
 
 package org.logstash.filters.parser;
 
+import org.joda.time.Chronology;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
 import org.joda.time.DateTimeZone;
+import org.joda.time.IllegalInstantException;
 import org.joda.time.Instant;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 import java.math.BigDecimal;
 
+import java.text.ParsePosition;
 import java.util.Locale;
+import java.util.regex.Pattern;
+
+public class JodaParser implements PrefixParser {
+  // Only digits, so they are read without Joda, eight at a time
+  private static final Pattern COMPACT_PATTERN = Pattern.compile("yyyyMMdd(HH(mm(ss(SSS)?)?)?)?");
+  private static final long[] COMPACT_TIME_SCALE = { 0, 0, 10_000_000, 0, 100_000, 0, 1_000, 0, 0, 1 };
+  private static final long NOT_COMPACT = Long.MIN_VALUE;
 
-public class JodaParser implements TimestampParser {
   private final DateTimeFormatter parser;
+  private final FormatterParsing parsing;
+  // Local times without a year, set in a year guessed for each value
+  private final FormatterParsing localParsing;
   private final boolean hasYear;
   private final boolean hasZone;
   private final String timezone;
+  private final String pattern;
+  private final int compactLength;
+  private final Chronology chronology;
 
   private final Clock clock = defaultClock;
 
@@ -47,24 +63,60 @@ public class JodaParser implements TimestampParser {
     JodaParser.defaultClock = clock;
   }
 
+  static Clock getDefaultClock() {
+    return defaultClock;
+  }
+
+  String getPattern() {
+    return pattern;
+  }
+
+  DateTimeFormatter getFormatter() {
+    return parser;
+  }
+
   public JodaParser(String pattern, Locale locale, String timezone) {
     this.timezone = timezone;
+    this.pattern = pattern;
 
     // Does the pattern contain year information?
     hasYear = (pattern.contains("Y") || pattern.contains("y"));
     // If pattern has no timezone format, we should parse in "local" time.
     hasZone = pattern.contains("Z");
 
-    parser = DateTimeFormat.forPattern(pattern).withDefaultYear(clock.read().getYear()).withLocale(locale).withZone(DateTimeZone.forID(timezone));
+    DateTimeFormatter formatter = ZoneTokenParser.formatterFor(pattern);
+    if (formatter == null) {
+      formatter = DateTimeFormat.forPattern(pattern);
+    }
+    parser = formatter.withDefaultYear(clock.read().getYear()).withLocale(locale).withZone(ZonePreload.forID(timezone));
+    compactLength = COMPACT_PATTERN.matcher(pattern).matches() ? pattern.length() : 0;
+    chronology = DateTimeUtils.getChronology(parser.getChronology()).withZone(parser.getZone());
+    parsing = new FormatterParsing(parser);
+    localParsing = !hasYear && !hasZone ? new FormatterParsing(parser.withZoneUTC()) : null;
   }
 
   @Override
   public Instant parse(String value) {
+    return parse((CharSequence) value);
+  }
+
+  @Override
+  public Instant parse(CharSequence value) {
+    if (hasYear) {
+      long millis = parseCompact(value, null);
+      return new Instant(millis != NOT_COMPACT ? millis : parsing.parseMillis(value));
+    } else {
+      return parseAndGuessYear(value.toString(), null, null);
+    }
+  }
 
+  @Override
+  public Instant parsePrefix(String value, ParsePosition position) {
     if (hasYear) {
-      return new Instant(parser.parseMillis(value));
+      long millis = parseCompact(value, position);
+      return new Instant(millis != NOT_COMPACT ? millis : parsing.parseMillis(value, null, position));
     } else {
-      return parseAndGuessYear(parser, value);
+      return parseAndGuessYear(value, null, position);
     }
   }
 
@@ -85,27 +137,86 @@ public class JodaParser implements TimestampParser {
 
   @Override
   public Instant parseWithTimeZone(String value, String timezone) {
-    DateTimeZone tz = DateTimeZone.forID(timezone);
-    DateTimeFormatter parserWithZone = parser.withZone(tz);
+    DateTimeZone tz = ZonePreload.forID(timezone);
     if (hasYear) {
-      return new Instant(parserWithZone.parseMillis(value));
+      return new Instant(parsing.parseMillis(value, tz));
     } else {
-      return parseAndGuessYear(parserWithZone, value);
+      return parseAndGuessYear(value, tz, null);
+    }
+  }
+
+  @Override
+  public Instant parsePrefixWithTimeZone(String value, String timezone, ParsePosition position) {
+    DateTimeZone tz = ZonePreload.forID(timezone);
+    if (hasYear) {
+      return new Instant(parsing.parseMillis(value, tz, position));
+    } else {
+      return parseAndGuessYear(value, tz, position);
+    }
+  }
+
+  /*
+   * Parses the value of a compact numeric pattern, or returns NOT_COMPACT when the pattern is not one or the value
+   * does not exactly fit it, leaving the parsing and the errors to Joda. With a position, the value is read from its
+   * index and must not go on with more digits, that Joda could read as part of the last field.
+   */
+  private long parseCompact(CharSequence value, ParsePosition position) {
+    int start = position == null ? 0 : position.getIndex();
+    int end = start + compactLength;
+    if (compactLength == 0 || (position == null ? value.length() != compactLength
+            : value.length() < end || (value.length() > end && Character.isDigit(value.charAt(end))))) {
+      return NOT_COMPACT;
+    }
+    long date = Digits.parse(value, start, start + 8);
+    long time = compactLength == 8 ? 0 : Digits.parse(value, start + 8, end);
+    if (date == Digits.INVALID || time == Digits.INVALID) {
+      return NOT_COMPACT;
+    }
+    // As HHmmssSSS
+    time *= COMPACT_TIME_SCALE[compactLength - 8];
+    long millis;
+    try {
+      millis = chronology.getDateTimeMillis((int) (date / 10_000), (int) (date / 100 % 100), (int) (date % 100),
+              (int) (time / 10_000_000), (int) (time / 100_000 % 100), (int) (time / 1_000 % 100), (int) (time % 1_000));
+    } catch (IllegalArgumentException e) {
+      return NOT_COMPACT;
+    }
+    if (position != null) {
+      position.setIndex(end);
+    }
+    return millis;
+  }
+
+  /*
+   * Like LocalDateTime#toDateTime: the earlier time of an overlap, and a failure for a time that the zone skips.
+   */
+  private static long toZone(long localMillis, DateTimeZone zone) {
+    int offset = zone.getOffsetFromLocal(localMillis);
+    long millis = localMillis - offset;
+    if (offset != zone.getOffset(millis)) {
+      throw new IllegalInstantException(localMillis, zone.getID());
     }
+    return millis;
   }
 
-  private Instant parseAndGuessYear(DateTimeFormatter parser, String value) {
+  /*
+   * The zone is the one to parse in, or null for the zone of the parser. Works on millis in the chronology of that
+   * zone, as the DateTime it would otherwise take is an allocation per value. The position is null to parse the
+   * whole value.
+   */
+  private Instant parseAndGuessYear(String value, DateTimeZone zone, ParsePosition position) {
     // if we get here, we need to do some special handling at the time each event is handled
     // because things like the current year could be different, etc.
-    DateTime dateTime;
+    Chronology zoned = zone == null ? chronology : chronology.withZone(zone);
+    long millis;
     if (hasZone) {
-      dateTime = parser.parseDateTime(value);
+      millis = zone == null && position == null ? parsing.parseMillis(value) : parsing.parseMillis(value, zone, position);
     } else {
-      dateTime = parser.withZoneUTC().parseLocalDateTime(value).toDateTime(parser.getZone());
+      millis = toZone(localParsing.parseLocalMillis(value, position), zoned.getZone());
     }
 
     // The time format we have has no year listed, so we'll have to guess the year.
-    int month = dateTime.getMonthOfYear();
+    int month = zoned.monthOfYear().get(millis);
     DateTime now = clock.read();
     int eventYear;
 
@@ -120,7 +231,7 @@ public class JodaParser implements TimestampParser {
       eventYear = now.getYear();
     }
 
-    return dateTime.withYear(eventYear).toInstant();
+    return new Instant(zoned.year().set(millis, eventYear));
   }
 
 }
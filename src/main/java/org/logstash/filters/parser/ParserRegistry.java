@@ -0,0 +1,78 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters.parser;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide registry of parsers, so that every filter configured with the same format, locale and timezone
+ * shares one immutable parser. Parsers are weakly referenced: once no filter uses one anymore, for instance after a
+ * pipeline reload, it can be collected and its entry is dropped.
+ */
+final class ParserRegistry {
+  private final ConcurrentHashMap<Object, ParserReference> parsers = new ConcurrentHashMap<>();
+  private final ReferenceQueue<TimestampParser> collected = new ReferenceQueue<>();
+
+  private static final class ParserReference extends WeakReference<TimestampParser> {
+    private final Object key;
+
+    ParserReference(Object key, TimestampParser parser, ReferenceQueue<TimestampParser> queue) {
+      super(parser, queue);
+      this.key = key;
+    }
+  }
+
+  TimestampParser get(Object key, Supplier<TimestampParser> factory) {
+    expungeCollected();
+    ParserReference reference = parsers.get(key);
+    TimestampParser parser = reference == null ? null : reference.get();
+    if (parser != null) {
+      return parser;
+    }
+
+    // Holds the parser strongly until it is returned, so it cannot be collected in between
+    TimestampParser[] result = new TimestampParser[1];
+    parsers.compute(key, (k, existing) -> {
+      TimestampParser current = existing == null ? null : existing.get();
+      if (current == null) {
+        current = factory.get();
+        existing = new ParserReference(k, current, collected);
+      }
+      result[0] = current;
+      return existing;
+    });
+    return result[0];
+  }
+
+  int size() {
+    expungeCollected();
+    return parsers.size();
+  }
+
+  private void expungeCollected() {
+    ParserReference reference;
+    while ((reference = (ParserReference) collected.poll()) != null) {
+      parsers.remove(reference.key, reference);
+    }
+  }
+}
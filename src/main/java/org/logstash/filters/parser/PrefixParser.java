@@ -17,22 +17,25 @@
  * under the License.
  */
 
-package org.logstash.filters;
+package org.logstash.filters.parser;
 
 import org.joda.time.Instant;
-import org.logstash.Event;
-import org.logstash.filters.parser.TimestampParser;
 
-import java.io.IOException;
+import java.text.ParsePosition;
 
-class StringInputHandler implements InputHandler {
-  private TimestampParser parser;
-
-  public StringInputHandler(TimestampParser parser) {
-    this.parser = parser;
-  }
+/**
+ * A parser of text that also reads a timestamp at the start of a longer value, such as a log line, without reading
+ * the text that follows it.
+ */
+public interface PrefixParser extends TimestampParser {
+  /**
+   * Parses the timestamp that starts at the index of the position, and sets the index to where the timestamp ends.
+   * Throws like {@link #parse(String)} when no timestamp starts there.
+   */
+  Instant parsePrefix(String value, ParsePosition position);
 
-  public Instant handle(String input, Event event) throws IOException {
-    return this.parser.parse(input);
-  }
+  /**
+   * Like {@link #parsePrefix}, in the given timezone for timestamps without one.
+   */
+  Instant parsePrefixWithTimeZone(String value, String timezone, ParsePosition position);
 }
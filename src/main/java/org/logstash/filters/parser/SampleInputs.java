@@ -0,0 +1,69 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters.parser;
+
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Makes up inputs that a parser should accept, such as a time printed with its own pattern, to exercise parsers
+ * before real events arrive.
+ */
+public final class SampleInputs {
+  private SampleInputs() {}
+
+  public static List<Object> of(TimestampParser parser, long epochMillis) {
+    long seconds = Math.floorDiv(epochMillis, 1000);
+    if (parser instanceof JodaParser) {
+      DateTimeFormatter formatter = ((JodaParser) parser).getFormatter();
+      return formatter.isPrinter() ? Collections.singletonList(formatter.print(epochMillis)) : Collections.emptyList();
+    } else if (parser instanceof CasualISO8601Parser) {
+      List<Object> inputs = new ArrayList<>();
+      inputs.add(ISODateTimeFormat.dateTime().print(epochMillis));
+      for (DateTimeFormatter formatter : ((CasualISO8601Parser) parser).getFormatters()) {
+        if (formatter.isPrinter()) {
+          inputs.add(formatter.print(epochMillis));
+        }
+      }
+      return inputs;
+    } else if (parser instanceof UnixEpochParser) {
+      return Arrays.asList(Long.toString(seconds), String.format("%d.%03d", seconds, Math.floorMod(epochMillis, 1000)),
+              seconds, epochMillis / 1000d, BigDecimal.valueOf(epochMillis, 3));
+    } else if (parser instanceof UnixMillisEpochParser) {
+      return Arrays.asList(Long.toString(epochMillis), epochMillis);
+    } else if (parser instanceof ScaledEpochParser) {
+      long units = epochMillis * (1_000_000L / ((ScaledEpochParser) parser).getNanosPerUnit());
+      return Arrays.asList(Long.toString(units), units);
+    } else if (parser instanceof UnixAutoEpochParser) {
+      return Arrays.asList(String.format("%d.%03d", seconds, Math.floorMod(epochMillis, 1000)), Long.toString(epochMillis),
+              Long.toString(epochMillis * 1_000), seconds, epochMillis, epochMillis / 1000d, BigDecimal.valueOf(epochMillis, 3));
+    } else if (parser instanceof TAI64NParser) {
+      // TAI64 labels count from 2^62 and are 10 seconds ahead of UTC
+      return Collections.singletonList(String.format("@%016x%08x", (1L << 62) + seconds + 10, Math.floorMod(epochMillis, 1000) * 1_000_000));
+    }
+    return Collections.emptyList();
+  }
+}
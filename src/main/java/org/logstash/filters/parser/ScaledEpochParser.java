@@ -0,0 +1,66 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters.parser;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Unix epochs in a unit smaller than the second, such as microseconds ({@code UNIX_US}) or nanoseconds
+ * ({@code UNIX_NS}), kept to the nanosecond.
+ */
+public class ScaledEpochParser implements EpochNanosParser {
+  private final long nanosPerUnit;
+  private final BigDecimal nanosPerUnitDecimal;
+
+  public ScaledEpochParser(long nanosPerUnit) {
+    this.nanosPerUnit = nanosPerUnit;
+    this.nanosPerUnitDecimal = BigDecimal.valueOf(nanosPerUnit);
+  }
+
+  long getNanosPerUnit() {
+    return nanosPerUnit;
+  }
+
+  @Override
+  public long parseNanos(CharSequence value) {
+    long units = Digits.parse(value, 0, value.length());
+    return parseNanos(units != Digits.INVALID ? units : Long.parseLong(value.toString()));
+  }
+
+  @Override
+  public long parseNanos(long value) {
+    return EpochNanosParser.scale(value, nanosPerUnit);
+  }
+
+  @Override
+  public long parseNanos(double value) {
+    return EpochNanosParser.scale(value, nanosPerUnit);
+  }
+
+  @Override
+  public long parseNanos(BigDecimal value) {
+    try {
+      return value.multiply(nanosPerUnitDecimal).setScale(0, RoundingMode.DOWN).longValueExact();
+    } catch (ArithmeticException e) {
+      throw new IllegalArgumentException("Cannot parse date for value out of the range of nanosecond epochs: " + value);
+    }
+  }
+}
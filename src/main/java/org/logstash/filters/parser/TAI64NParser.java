@@ -29,6 +29,9 @@ public class TAI64NParser implements TimestampParser {
     if (value.startsWith("@")) {
       offset = 1;
     }
+    if (value.length() < 24 + offset) {
+      throw new IllegalArgumentException("Invalid TAI64N format: \"" + value + "\" should have 24 hexadecimal digits");
+    }
 
     // https://cr.yp.to/libtai/tai64.html
     // First 8 bytes (16 hex chars) of TAI64N are seconds. TAI64's unix epoch is at 2^62
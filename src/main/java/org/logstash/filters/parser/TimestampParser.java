@@ -24,6 +24,15 @@ import java.math.BigDecimal;
 
 public interface TimestampParser {
   Instant parse(String value);
+
+  /**
+   * Parses text that is not necessarily a {@link String}, such as a view over an event's raw bytes.
+   * Parsers that cannot read a {@link CharSequence} directly fall back to {@link #parse(String)}.
+   */
+  default Instant parse(CharSequence value) {
+    return parse(value.toString());
+  }
+
   Instant parse(Long value);
   Instant parse(Double value);
   Instant parse(BigDecimal value);
@@ -21,6 +21,7 @@ package org.logstash.filters.parser;
 
 import org.joda.time.DateTimeZone;
 
+import java.util.Arrays;
 import java.util.Locale;
 
 public class TimestampParserFactory {
@@ -29,12 +30,29 @@ public class TimestampParserFactory {
   private static final String ISO8601 = "ISO8601";
   private static final String UNIX = "UNIX";
   private static final String UNIX_MS = "UNIX_MS";
+  private static final String UNIX_US = "UNIX_US";
+  private static final String UNIX_NS = "UNIX_NS";
+  private static final String UNIX_AUTO = "UNIX_AUTO";
   private static final String TAI64N = "TAI64N";
+  private static final String AUTO = "AUTO";
+
+  private static final ParserRegistry registry = new ParserRegistry();
 
   /*
    * zone is a String because it can be dynamic and come from the event while we parse it.
+   *
+   * Parsers are immutable, so the same instance is returned for the same pattern, locale and zone for as long as
+   * it is in use somewhere in the process.
    */
   public static TimestampParser makeParser(String pattern, Locale locale, String zone) {
+    return makeParser(pattern, locale, zone, true);
+  }
+
+  /*
+   * With shared false, the parser is built for the caller alone and never handed out to anyone else, for benchmarks
+   * that compare filters sharing their parsers with filters that do not.
+   */
+  public static TimestampParser makeParser(String pattern, Locale locale, String zone, boolean shared) {
     if (locale == null) {
       locale = Locale.getDefault();
     }
@@ -47,6 +65,23 @@ public class TimestampParserFactory {
       tz = null;
     }
 
+    if (pattern.equals(AUTO)) {
+      // Detected from the inputs, so each filter needs its own
+      return new AutoDetectParser(tz);
+    }
+
+    if (!shared) {
+      return newParser(pattern, locale, tz);
+    }
+
+    // The clock is part of the key as it is captured by the pattern parsers when they are built
+    final Locale parserLocale = locale;
+    final String parserZone = tz;
+    return registry.get(Arrays.asList(pattern, parserLocale, parserZone, JodaParser.getDefaultClock()),
+            () -> newParser(pattern, parserLocale, parserZone));
+  }
+
+  private static TimestampParser newParser(String pattern, Locale locale, String tz) {
     switch (pattern) {
       case ISO8601: // Short-hand for a few ISO8601-ish formats
         return new CasualISO8601Parser(tz);
@@ -56,16 +91,30 @@ public class TimestampParserFactory {
         return new TAI64NParser();
       case UNIX_MS: // Unix epoch in milliseconds
         return new UnixMillisEpochParser();
+      case UNIX_US: // Unix epoch in microseconds
+        return new ScaledEpochParser(1_000);
+      case UNIX_NS: // Unix epoch in nanoseconds
+        return new ScaledEpochParser(1);
+      case UNIX_AUTO: // Unix epoch in a unit told by its magnitude
+        return new UnixAutoEpochParser();
       default:
         return new JodaParser(pattern, locale, tz);
     }
   }
 
+  static int sharedParserCount() {
+    return registry.size();
+  }
+
   public static TimestampParser makeParser(String pattern) {
     return makeParser(pattern, (Locale)null, null);
   }
 
   public static TimestampParser makeParser(String pattern, String locale, String zone) {
-    return makeParser(pattern, locale == null ? null : Locale.forLanguageTag(locale), zone);
+    return makeParser(pattern, locale, zone, true);
+  }
+
+  public static TimestampParser makeParser(String pattern, String locale, String zone, boolean shared) {
+    return makeParser(pattern, locale == null ? null : Locale.forLanguageTag(locale), zone, shared);
   }
 }
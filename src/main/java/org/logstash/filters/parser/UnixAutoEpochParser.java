@@ -0,0 +1,118 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters.parser;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Unix epochs whose unit is told by their magnitude ({@code UNIX_AUTO}): up to {@link Integer#MAX_VALUE} they are
+ * seconds, then milliseconds, microseconds and nanoseconds, in the same ranges as {@link AutoDetectParser}. Text can
+ * have a fraction of the unit, and everything is kept to the nanosecond.
+ */
+public class UnixAutoEpochParser implements EpochNanosParser {
+  static final long MAX_EPOCH_SECONDS = Integer.MAX_VALUE;
+  static final long MAX_EPOCH_MILLISECONDS = 100_000_000_000_000L;
+  static final long MAX_EPOCH_MICROSECONDS = 100_000_000_000_000_000L;
+
+  private static final BigDecimal MAX_EPOCH_SECONDS_DECIMAL = BigDecimal.valueOf(MAX_EPOCH_SECONDS);
+  private static final BigDecimal MAX_EPOCH_MILLISECONDS_DECIMAL = BigDecimal.valueOf(MAX_EPOCH_MILLISECONDS);
+  private static final BigDecimal MAX_EPOCH_MICROSECONDS_DECIMAL = BigDecimal.valueOf(MAX_EPOCH_MICROSECONDS);
+
+  static long nanosPerUnit(long magnitude) {
+    if (magnitude <= MAX_EPOCH_SECONDS) {
+      return 1_000_000_000L;
+    } else if (magnitude < MAX_EPOCH_MILLISECONDS) {
+      return 1_000_000L;
+    } else if (magnitude < MAX_EPOCH_MICROSECONDS) {
+      return 1_000L;
+    }
+    return 1L;
+  }
+
+  @Override
+  public long parseNanos(CharSequence value) {
+    int length = value.length();
+    boolean negative = length > 0 && value.charAt(0) == '-';
+    int i = negative ? 1 : 0;
+    int start = i;
+    long units = 0;
+    char c;
+    while (i < length && (c = value.charAt(i)) >= '0' && c <= '9') {
+      if (units > (Long.MAX_VALUE - (c - '0')) / 10) {
+        throw new IllegalArgumentException("Cannot parse date for value out of the range of nanosecond epochs: " + value);
+      }
+      units = units * 10 + (c - '0');
+      i++;
+    }
+    if (i == start) {
+      throw new IllegalArgumentException("Invalid epoch: \"" + value + "\"");
+    }
+
+    long nanosPerUnit = nanosPerUnit(units);
+    long nanos = EpochNanosParser.scale(units, nanosPerUnit);
+    if (i < length) {
+      if (value.charAt(i) != '.' || i == length - 1) {
+        throw new IllegalArgumentException("Invalid epoch: \"" + value + "\"");
+      }
+      // Digits beyond the nanosecond are checked but dropped
+      long scale = nanosPerUnit;
+      for (i++; i < length; i++) {
+        c = value.charAt(i);
+        if (c < '0' || c > '9') {
+          throw new IllegalArgumentException("Invalid epoch: \"" + value + "\"");
+        }
+        scale /= 10;
+        nanos += (c - '0') * scale;
+      }
+    }
+    return negative ? -nanos : nanos;
+  }
+
+  @Override
+  public long parseNanos(long value) {
+    return EpochNanosParser.scale(value, nanosPerUnit(Math.abs(value)));
+  }
+
+  @Override
+  public long parseNanos(double value) {
+    return EpochNanosParser.scale(value, nanosPerUnit((long) Math.abs(value)));
+  }
+
+  @Override
+  public long parseNanos(BigDecimal value) {
+    BigDecimal magnitude = value.abs();
+    long nanosPerUnit;
+    if (magnitude.compareTo(MAX_EPOCH_SECONDS_DECIMAL) <= 0) {
+      nanosPerUnit = 1_000_000_000L;
+    } else if (magnitude.compareTo(MAX_EPOCH_MILLISECONDS_DECIMAL) < 0) {
+      nanosPerUnit = 1_000_000L;
+    } else if (magnitude.compareTo(MAX_EPOCH_MICROSECONDS_DECIMAL) < 0) {
+      nanosPerUnit = 1_000L;
+    } else {
+      nanosPerUnit = 1L;
+    }
+    try {
+      return value.multiply(BigDecimal.valueOf(nanosPerUnit)).setScale(0, RoundingMode.DOWN).longValueExact();
+    } catch (ArithmeticException e) {
+      throw new IllegalArgumentException("Cannot parse date for value out of the range of nanosecond epochs: " + value);
+    }
+  }
+}
@@ -23,9 +23,37 @@ import java.math.BigDecimal;
 
 public class UnixEpochParser implements TimestampParser {
   private static long MAX_EPOCH_SECONDS = (long)Integer.MAX_VALUE;
+  private static final long[] MILLIS_PER_SUBDIGIT = { 0, 100, 10, 1 };
 
   @Override
   public Instant parse(String value) {
+    return parse((CharSequence) value);
+  }
+
+  @Override
+  public Instant parse(CharSequence value) {
+    int length = value.length();
+    int dot = 0;
+    while (dot < length && value.charAt(dot) != '.') {
+      dot++;
+    }
+    long seconds = Digits.parse(value, 0, dot);
+    if (seconds != Digits.INVALID && seconds <= MAX_EPOCH_SECONDS) {
+      if (dot == length) {
+        return new Instant(seconds * 1000);
+      }
+      // Milliseconds today, so we take at most 3 digits after the dot.
+      int subdigits = Math.min(3, length - dot - 1);
+      long subseconds = Digits.parse(value, dot + 1, dot + 1 + subdigits);
+      if (subseconds != Digits.INVALID) {
+        return new Instant(seconds * 1000 + subseconds * MILLIS_PER_SUBDIGIT[subdigits]);
+      }
+    }
+    // Signs, out of range or invalid values
+    return parseSlowly(value.toString());
+  }
+
+  private Instant parseSlowly(String value) {
     if (value.contains(".")) {
       int dot = value.indexOf(".");
       long seconds = Long.parseLong(value.substring(0, dot));
@@ -27,7 +27,13 @@ public class UnixMillisEpochParser implements TimestampParser {
 
   @Override
   public Instant parse(String value) {
-    return parse(Long.parseLong(value));
+    return parse((CharSequence) value);
+  }
+
+  @Override
+  public Instant parse(CharSequence value) {
+    long millis = Digits.parse(value, 0, value.length());
+    return new Instant(millis != Digits.INVALID ? millis : Long.parseLong(value.toString()));
   }
 
   @Override
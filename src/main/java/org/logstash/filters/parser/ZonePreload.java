@@ -0,0 +1,83 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters.parser;
+
+import org.joda.time.DateTimeZone;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Time zones loaded up front, for processes that cannot wait for the first events to load them. Joda compiles the
+ * tz database into a small binary file per zone when it is built, and reads and decodes a file the first time its
+ * zone is looked up, which adds up when events carry many zones. Here the zones are loaded together when the
+ * pipeline starts, and kept in an immutable map that the parsers look zones up in first. Joda only keeps its zones
+ * through soft references, so the map also keeps them from being loaded again after a collection.
+ */
+public final class ZonePreload {
+  private static volatile Map<String, DateTimeZone> zones = Collections.emptyMap();
+
+  private ZonePreload() {}
+
+  /**
+   * Loads every zone that Joda knows, and returns the number of zones that were not loaded yet.
+   */
+  public static int preloadAll() {
+    return preload(DateTimeZone.getAvailableIDs());
+  }
+
+  /**
+   * Loads the given zones, and returns the number of zones that were not loaded yet. IDs that are not zones are
+   * left out, for {@link DateTimeZone#forID} to reject when they are used.
+   */
+  public static synchronized int preload(Collection<String> ids) {
+    Map<String, DateTimeZone> all = new HashMap<>(zones);
+    int loaded = 0;
+    for (String id : ids) {
+      if (id == null || all.containsKey(id)) {
+        continue;
+      }
+      try {
+        all.put(id, DateTimeZone.forID(id));
+        loaded++;
+      } catch (IllegalArgumentException e) {
+        // Not a zone
+      }
+    }
+    if (loaded > 0) {
+      zones = Collections.unmodifiableMap(all);
+    }
+    return loaded;
+  }
+
+  /**
+   * Like {@link DateTimeZone#forID}, from the preloaded zones when there.
+   */
+  public static DateTimeZone forID(String id) {
+    DateTimeZone zone = zones.get(id);
+    return zone != null ? zone : DateTimeZone.forID(id);
+  }
+
+  static int size() {
+    return zones.size();
+  }
+}
@@ -0,0 +1,273 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters.parser;
+
+import org.joda.time.DateTimeUtils;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.DateTimeFormatterBuilder;
+import org.joda.time.format.DateTimeParser;
+import org.joda.time.format.DateTimeParserBucket;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Parses the zone IDs ({@code ZZZ}) and zone names ({@code z}) of patterns in place of Joda, which compares the
+ * input with every known ID or name to find the longest one it starts with. Here the tokens are looked up in a
+ * prefix trie, and the few zones seen last are checked first, each mapping straight to its {@link DateTimeZone}.
+ * The results are the same as Joda's, which reads an ID by the part before its first '/': when a '/' follows within
+ * the length of the longest such part, only an ID that spans it matches, so {@code "UTC/x"} is not read as UTC.
+ *
+ * Joda only reads a {@link CharSequence} through its package-private {@code InternalParser}, and hands parsers
+ * like this one the {@code toString()} of the value. Values read from the event's own bytes cache theirs, so a
+ * value is decoded once however many formats with zones it is tried against.
+ */
+final class ZoneTokenParser implements DateTimeParser {
+  private static final int RECENT = 4;
+  static final LongAdder HITS = new LongAdder();
+  static final LongAdder MISSES = new LongAdder();
+  // Set while a flight recording takes the cache statistics, see CacheStatistics
+  static volatile boolean counting;
+
+  private static final Trie IDS = new Trie(DateTimeZone.getAvailableIDs().toArray(new String[0]), null);
+  // Where Joda looks for the '/' of an ID
+  private static final int SLASH_WINDOW = slashWindow(DateTimeZone.getAvailableIDs());
+  private static volatile Trie names;
+
+  private final boolean ids;
+  private final Node[] recent = new Node[RECENT];
+  private int nextRecent;
+
+  private ZoneTokenParser(boolean ids) {
+    this.ids = ids;
+  }
+
+  /**
+   * Returns a formatter for the pattern that parses its zone IDs and names with this parser, or null when the
+   * pattern has none. Formatters are built for each part of the pattern around them, which gives the same fields
+   * as the whole pattern since zones are never parsed as numbers.
+   */
+  static DateTimeFormatter formatterFor(String pattern) {
+    DateTimeFormatterBuilder builder = null;
+    int partStart = 0;
+    boolean quoted = false;
+    int i = 0;
+    while (i < pattern.length()) {
+      char c = pattern.charAt(i);
+      if (c == '\'') {
+        quoted = !quoted;
+        i++;
+        continue;
+      }
+      int end = i;
+      while (end < pattern.length() && pattern.charAt(end) == c) {
+        end++;
+      }
+      boolean zoneId = c == 'Z' && end - i >= 3;
+      boolean zoneName = c == 'z' && end - i <= 3;
+      if (!quoted && (zoneId || zoneName)) {
+        if (builder == null) {
+          builder = new DateTimeFormatterBuilder();
+        }
+        if (i > partStart) {
+          builder.append(DateTimeFormat.forPattern(pattern.substring(partStart, i)));
+        }
+        String token = pattern.substring(i, end);
+        builder.append(DateTimeFormat.forPattern(token).getPrinter(), new ZoneTokenParser(zoneId));
+        partStart = end;
+      }
+      i = end;
+    }
+    if (builder == null) {
+      return null;
+    }
+    if (partStart < pattern.length()) {
+      builder.append(DateTimeFormat.forPattern(pattern.substring(partStart)));
+    }
+    return builder.toFormatter();
+  }
+
+  @Override
+  public int estimateParsedLength() {
+    return trie().maxLength;
+  }
+
+  @Override
+  public int parseInto(DateTimeParserBucket bucket, String text, int position) {
+    Trie trie = trie();
+    Node node = recentMatch(trie, text, position);
+    if (node != null) {
+      if (counting) {
+        HITS.increment();
+      }
+    } else {
+      if (counting) {
+        MISSES.increment();
+      }
+      node = trie.longestMatch(text, position);
+      if (node == null) {
+        return ~position;
+      }
+      // Racy, at worst a zone is looked up in the trie once more
+      recent[nextRecent++ & (RECENT - 1)] = node;
+    }
+    if (ids && slashAfter(text, position, position + node.token.length())) {
+      return ~position;
+    }
+    bucket.setZone(node.zone());
+    return position + node.token.length();
+  }
+
+  private Trie trie() {
+    if (ids) {
+      return IDS;
+    }
+    // Joda's names can be changed at any time, the trie follows them
+    Map<String, DateTimeZone> current = DateTimeUtils.getDefaultTimeZoneNames();
+    Trie trie = names;
+    if (trie == null || trie.names != current) {
+      trie = new Trie(current.keySet().toArray(new String[0]), current);
+      names = trie;
+    }
+    return trie;
+  }
+
+  private static int slashWindow(Iterable<String> ids) {
+    int window = 0;
+    for (String id : ids) {
+      window = Math.max(window, id.indexOf('/') + 1);
+    }
+    return window;
+  }
+
+  /**
+   * Whether Joda would find a '/' after the matched ID, which then does not match as it does not span it.
+   */
+  private static boolean slashAfter(CharSequence text, int position, int end) {
+    int windowEnd = Math.min(text.length(), position + SLASH_WINDOW);
+    for (int i = end; i < windowEnd; i++) {
+      if (text.charAt(i) == '/') {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private Node recentMatch(Trie trie, String text, int position) {
+    for (Node node : recent) {
+      if (node != null && node.names == trie.names && text.startsWith(node.token, position)) {
+        int end = position + node.token.length();
+        // Only if no longer token could match
+        if (end == text.length() || node.child(text.charAt(end)) == null) {
+          return node;
+        }
+      }
+    }
+    return null;
+  }
+
+  private static final class Trie {
+    final Node root = new Node(null, null);
+    final Map<String, DateTimeZone> names;
+    final int maxLength;
+
+    Trie(String[] tokens, Map<String, DateTimeZone> names) {
+      this.names = names;
+      int longest = 0;
+      for (String token : tokens) {
+        Node node = root;
+        for (int i = 0; i < token.length(); i++) {
+          node = node.childOrAdd(token.charAt(i));
+        }
+        node.setToken(token, names);
+        longest = Math.max(longest, token.length());
+      }
+      maxLength = longest;
+    }
+
+    Node longestMatch(String text, int position) {
+      Node node = root;
+      Node longest = null;
+      for (int i = position; i < text.length(); i++) {
+        node = node.child(text.charAt(i));
+        if (node == null) {
+          break;
+        }
+        if (node.token != null) {
+          longest = node;
+        }
+      }
+      return longest;
+    }
+  }
+
+  private static final class Node {
+    private char[] labels = new char[0];
+    private Node[] children = new Node[0];
+    private String token;
+    private Map<String, DateTimeZone> names;
+    private volatile DateTimeZone zone;
+
+    Node(String token, Map<String, DateTimeZone> names) {
+      this.token = token;
+      this.names = names;
+    }
+
+    Node child(char label) {
+      char[] labels = this.labels;
+      for (int i = 0; i < labels.length; i++) {
+        if (labels[i] == label) {
+          return children[i];
+        }
+      }
+      return null;
+    }
+
+    Node childOrAdd(char label) {
+      Node child = child(label);
+      if (child == null) {
+        child = new Node(null, null);
+        labels = Arrays.copyOf(labels, labels.length + 1);
+        labels[labels.length - 1] = label;
+        children = Arrays.copyOf(children, children.length + 1);
+        children[children.length - 1] = child;
+      }
+      return child;
+    }
+
+    void setToken(String token, Map<String, DateTimeZone> names) {
+      this.token = token;
+      this.names = names;
+    }
+
+    DateTimeZone zone() {
+      DateTimeZone zone = this.zone;
+      if (zone == null) {
+        // Zones are loaded when first seen, like Joda does
+        zone = names == null ? ZonePreload.forID(token) : names.get(token);
+        this.zone = zone;
+      }
+      return zone;
+    }
+  }
+}
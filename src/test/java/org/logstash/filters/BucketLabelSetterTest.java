@@ -0,0 +1,67 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters;
+
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.junit.Test;
+import org.logstash.Event;
+import org.logstash.Timestamp;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class BucketLabelSetterTest {
+  @Test
+  public void bucketsByTheSmallestFieldUpToADay() {
+    assertEquals(86_400_000L, BucketLabelSetter.bucketMillis("YYYY.MM.dd"));
+    assertEquals(86_400_000L, BucketLabelSetter.bucketMillis("xxxx.ww"));
+    assertEquals(3_600_000L, BucketLabelSetter.bucketMillis("yyyy-MM-dd'T'HH"));
+    assertEquals(60_000L, BucketLabelSetter.bucketMillis("HH:mm 'sS'"));
+    assertEquals(1L, BucketLabelSetter.bucketMillis("ss.SSS"));
+  }
+
+  @Test
+  public void bucketsByHalfDaysAndByMillisecondsForUnknownLetters() {
+    assertEquals(43_200_000L, BucketLabelSetter.bucketMillis("yyyy-MM-dd a"));
+    assertEquals(3_600_000L, BucketLabelSetter.bucketMillis("yyyy-MM-dd hh a"));
+    assertEquals(1L, BucketLabelSetter.bucketMillis("yyyy-MM-dd q"));
+    assertEquals(86_400_000L, BucketLabelSetter.bucketMillis("yyyy-MM-dd 'q'"));
+  }
+
+  @Test
+  public void labelsLikeFormattingEveryEvent() {
+    Random random = new Random(42);
+    for (String pattern : new String[] { "YYYY.MM.dd", "yyyy-MM-dd HH", "EEE xxxx-ww", "mm", "yyyy-MM-dd a" }) {
+      BucketLabelSetter setter = new BucketLabelSetter("[label]", pattern);
+      DateTimeFormatter formatter = DateTimeFormat.forPattern(pattern).withZoneUTC();
+      long millis = 1_478_207_457_123L;
+      for (int i = 0; i < 10_000; i++) {
+        // Mostly in order, sometimes back to earlier buckets and before the epoch
+        millis += random.nextInt(600_000) - 100_000;
+        long value = i % 1_000 == 0 ? -millis : millis;
+        Event event = new Event();
+        setter.set(event, new Timestamp(value));
+        assertEquals(pattern + " " + value, formatter.print(value), event.getField("[label]"));
+      }
+    }
+  }
+}
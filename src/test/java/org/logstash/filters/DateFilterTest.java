@@ -5,11 +5,16 @@ import org.joda.time.DateTimeZone;
 import org.junit.Assert;
 import org.junit.Test;
 import org.logstash.Event;
+import org.logstash.RubyUtil;
 import org.logstash.Timestamp;
+import org.logstash.ext.JrubyEventExtLibrary.RubyEvent;
 import org.logstash.filters.parser.JodaParser;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 
@@ -131,6 +136,143 @@ public class DateFilterTest {
         applyDouble(subject, 1478207457.456D, "2016-11-03T21:10:57.456Z");
     }
 
+    @Test
+    public void testPatternStringsWithNonAsciiCharacters() {
+        DateFilter subject = new DateFilter("[happened_at]", "[result_ts]", failtagList);
+        subject.acceptFilterConfig("yyyy-MM-dd'\u00e0'HH:mm:ss", loc, tz);
+        applyString(subject, "2016-11-03\u00e021:10:57", "2016-11-03T21:10:57.000Z");
+    }
+
+    @Test
+    public void testNestedTargetField() {
+        DateFilter subject = new DateFilter("[event][original_time]", "[event][created]", failtagList);
+        subject.acceptFilterConfig("ISO8601", loc, tz);
+        Event event = new Event();
+        event.setField("[event][original_time]", "2001-12-07T23:54:54.123Z");
+        ParseExecutionResult code = subject.executeParsers(event);
+        Assert.assertSame(ParseExecutionResult.SUCCESS, code);
+        assertEquals(new Timestamp("2001-12-07T23:54:54.123Z"), event.getField("[event][created]"));
+    }
+
+    @Test
+    public void testSeveralSourceFields() {
+        DateFilter subject = new DateFilter("[event][created]", "[event][created]", failtagList);
+        subject.acceptFilterConfig("ISO8601", loc, tz);
+        subject.addSourceField("[event][end]", "[event][end]", Collections.singletonList("_end_fail"));
+        subject.acceptFilterConfig("UNIX_MS", loc, tz);
+
+        Event event = new Event();
+        event.setField("[event][created]", "2001-12-07T23:54:54.123Z");
+        event.setField("[event][end]", 1007769294123L);
+        Assert.assertSame(ParseExecutionResult.SUCCESS, subject.executeParsers(event));
+        assertEquals(new Timestamp("2001-12-07T23:54:54.123Z"), event.getField("[event][created]"));
+        assertEquals(new Timestamp("2001-12-07T23:54:54.123Z"), event.getField("[event][end]"));
+
+        event = new Event();
+        event.setField("[event][created]", "2001-12-07T23:54:54.123Z");
+        event.setField("[event][end]", "garbage");
+        Assert.assertSame(ParseExecutionResult.FAIL, subject.executeParsers(event));
+        assertEquals(new Timestamp("2001-12-07T23:54:54.123Z"), event.getField("[event][created]"));
+    }
+
+    @Test
+    public void testWarmupLeavesParsersUsable() {
+        DateFilter subject = new DateFilter("[happened_at]", "[result_ts]", failtagList);
+        subject.acceptFilterConfig("ISO8601", loc, "%{mytz}");
+        subject.acceptFilterConfig("UNIX", loc, tz);
+        subject.acceptFilterConfig("TAI64N", loc, tz);
+        subject.acceptFilterConfig("MMM dd yyyy HH:mm:ss", loc, tz);
+        Assert.assertTrue(subject.warmup(Collections.singletonList("Nov 03 2016 21:10:57"), 10) > 0);
+        applyString(subject, "Nov 03 2016 21:10:57", "2016-11-03T21:10:57.000Z");
+        applyString(subject, "4000000050d506482dbdf024", "2012-12-22T01:00:46.767Z");
+    }
+
+    @Test
+    public void testWarmupFailuresAreNotSampled() {
+        DateFilter subject = new DateFilter("[happened_at]", "[result_ts]", failtagList);
+        subject.acceptFilterConfig("yyyy-MM-dd", loc, tz);
+        subject.warmup(Collections.singletonList("not a date"), 10);
+        assertEquals(0L, subject.getCapturedFailures());
+        Assert.assertTrue(subject.getFailureSamples().isEmpty());
+    }
+
+    @Test
+    public void testBatchResultHandler() {
+        List<Integer> counts = new ArrayList<>();
+        DateFilter subject = new DateFilter("[happened_at]", "[result_ts]", failtagList, (matched, failed) -> {
+            counts.add(matched.size());
+            counts.add(failed.size());
+        });
+        subject.acceptFilterConfig("UNIX", loc, tz);
+        subject.setTagsOnSuccess(Collections.singletonList("_dated"));
+
+        List<RubyEvent> events = new ArrayList<>();
+        for (Object value : Arrays.asList(1478207457L, "garbage", 1478207458L, null)) {
+            Event event = new Event();
+            if (value != null) {
+                event.setField("[happened_at]", value);
+            }
+            events.add(RubyEvent.newRubyEvent(RubyUtil.RUBY, event));
+        }
+        subject.receive(events);
+        assertEquals(Arrays.asList(2, 1), counts);
+        assertEquals(Collections.singletonList("_dated"), events.get(0).getEvent().getField("tags"));
+        assertEquals(failtagList, events.get(1).getEvent().getField("tags"));
+        Assert.assertNull(events.get(3).getEvent().getField("tags"));
+    }
+
+    @Test
+    public void testFirstMatchingFormatOfMany() {
+        DateFilter subject = new DateFilter("[happened_at]", "[result_ts]", failtagList);
+        for (String format : new String[] { "dd/MMM/yyyy:HH:mm:ss Z", "yyyy-dd-MM", "UNIX_MS", "yyyy-MM-dd", "MMM dd yyyy HH:mm:ss", "ISO8601" }) {
+            subject.acceptFilterConfig(format, loc, tz);
+        }
+        applyString(subject, "03/Nov/2016:21:10:57 +0000", "2016-11-03T21:10:57.000Z");
+        applyString(subject, "2016-03-11", "2016-11-03T00:00:00.000Z");
+        applyString(subject, "2016-03-31", "2016-03-31T00:00:00.000Z");
+        applyString(subject, "1478207457123", "2016-11-03T21:10:57.123Z");
+        applyString(subject, "Nov 03 2016 21:10:57", "2016-11-03T21:10:57.000Z");
+        applyString(subject, "2016-11-03T21:10:57.123+01:00", "2016-11-03T20:10:57.123Z");
+    }
+
+    @Test
+    public void testAdditionalTargets() {
+        DateFilter subject = new DateFilter("[happened_at]", "[result_ts]", failtagList);
+        subject.acceptFilterConfig("ISO8601", loc, tz);
+        subject.addTarget("[result_millis]", "epoch_millis");
+        subject.addTarget("[result_nanos]", "epoch_nanos");
+        subject.addTarget("[result_iso]", "iso8601");
+        applyString(subject, "2001-12-07T23:54:54.123+01:00", "2001-12-07T22:54:54.123Z");
+
+        Event event = new Event();
+        event.setField("[happened_at]", "2001-12-07T23:54:54.123+01:00");
+        subject.executeParsers(event);
+        assertEquals(1007765694123L, event.getField("[result_millis]"));
+        assertEquals(1007765694123000000L, event.getField("[result_nanos]"));
+        assertEquals("2001-12-07T22:54:54.123Z", event.getField("[result_iso]"));
+    }
+
+    @Test
+    public void testEpochNanosTargetIsSkippedOutsideItsRange() {
+        DateFilter subject = new DateFilter("[happened_at]", "[result_ts]", failtagList);
+        subject.acceptFilterConfig("yyyy-MM-dd", loc, tz);
+        subject.acceptFilterConfig("yyyy-dd-MM", loc, tz);
+        subject.addTarget("[result_nanos]", "epoch_nanos");
+        subject.addTarget("[result_iso]", "iso8601");
+
+        Event event = new Event();
+        event.setField("[happened_at]", "2300-01-02");
+        Assert.assertSame(ParseExecutionResult.SUCCESS, subject.executeParsers(event));
+        assertEquals(new Timestamp("2300-01-02T00:00:00.000Z"), event.getField("[result_ts]"));
+        assertEquals("2300-01-02T00:00:00.000Z", event.getField("[result_iso]"));
+        Assert.assertNull(event.getField("[result_nanos]"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOnlyTimestampsGoToTimestampField() {
+        new DateFilter("[happened_at]", "[result_ts]", failtagList).addTarget("@timestamp", "iso8601");
+    }
+
     @Test
     public void testCancelledEvent() {
         DateFilter subject = new DateFilter("[happened_at]", "[result_ts]", failtagList);
@@ -144,6 +286,210 @@ public class DateFilterTest {
         Assert.assertSame(ParseExecutionResult.IGNORED, code);
         Assert.assertNull(event.getField("[result_ts]"));
     }
+
+    @Test
+    public void testNilFieldIsReportedAsAbsent() {
+        DateFilter subject = new DateFilter("[happened_at]", "[result_ts]", failtagList);
+        subject.acceptFilterConfig("UNIX", loc, tz);
+
+        Event event = new Event();
+        event.setField("[happened_at]", RubyUtil.RUBY.getNil());
+
+        ParseExecutionResult code = subject.executeParsers(event);
+        Assert.assertSame(ParseExecutionResult.FIELD_VALUE_IS_NULL_OR_FIELD_NOT_PRESENT, code);
+        Assert.assertNull(event.getField("[result_ts]"));
+    }
+
+    @Test
+    public void testEpochsKeepSubMillisecondPrecision() {
+        DateFilter subject = new DateFilter("[happened_at]", "[result_ts]", failtagList);
+        subject.acceptFilterConfig("UNIX_AUTO", loc, tz);
+        subject.addTarget("[result_nanos]", "epoch_nanos");
+
+        Event event = new Event();
+        event.setField("[happened_at]", "1478207457123456789");
+        Assert.assertSame(ParseExecutionResult.SUCCESS, subject.executeParsers(event));
+        assertEquals(1478207457123456789L, event.getField("[result_nanos]"));
+
+        event.setField("[happened_at]", 1478207457123456L);
+        Assert.assertSame(ParseExecutionResult.SUCCESS, subject.executeParsers(event));
+        assertEquals(1478207457123456000L, event.getField("[result_nanos]"));
+    }
+
+    @Test
+    public void testTimestampsArePassedThrough() {
+        DateFilter subject = new DateFilter("[happened_at]", "[result_ts]", failtagList);
+        subject.acceptFilterConfig("ISO8601", loc, tz);
+        subject.addTarget("[result_nanos]", "epoch_nanos");
+
+        Event event = new Event();
+        event.setField("[happened_at]", new Timestamp(java.time.Instant.parse("2016-11-03T20:10:57.123456789Z")));
+        Assert.assertSame(ParseExecutionResult.SUCCESS, subject.executeParsers(event));
+        assertEquals(new Timestamp(java.time.Instant.parse("2016-11-03T20:10:57.123456789Z")), event.getField("[result_ts]"));
+        assertEquals(1478203857123456789L, event.getField("[result_nanos]"));
+    }
+
+    @Test
+    public void testPassedThroughTimestampsCanBeReinterpreted() {
+        DateFilter subject = new DateFilter("[happened_at]", "[result_ts]", failtagList);
+        subject.acceptFilterConfig("ISO8601", loc, tz);
+        subject.setReinterpretTimezone("Europe/Paris");
+
+        Event event = new Event();
+        event.setField("[happened_at]", new Timestamp("2016-11-03T20:10:57.123Z"));
+        Assert.assertSame(ParseExecutionResult.SUCCESS, subject.executeParsers(event));
+        assertEquals(new Timestamp("2016-11-03T19:10:57.123Z"), event.getField("[result_ts]"));
+    }
+
+    @Test
+    public void testFailuresAreSampledAtABoundedRate() {
+        DateFilter subject = new DateFilter("[happened_at]", "[result_ts]", failtagList);
+        subject.acceptFilterConfig("yyyy-MM-dd", loc, tz);
+        subject.acceptFilterConfig("UNIX", loc, tz);
+
+        Event event = new Event();
+        event.setField("[happened_at]", "2016-13-45");
+        Assert.assertSame(ParseExecutionResult.FAIL, subject.executeParsers(event));
+        Event next = new Event();
+        next.setField("[happened_at]", "garbage");
+        Assert.assertSame(ParseExecutionResult.FAIL, subject.executeParsers(next));
+
+        assertEquals(1L, subject.getCapturedFailures());
+        List<String> samples = subject.getFailureSamples();
+        assertEquals(1, samples.size());
+        Assert.assertTrue(samples.get(0), samples.get(0).contains("field=[happened_at] value=\"2016-13-45\" formats=[yyyy-MM-dd, UNIX]"));
+    }
+
+    @Test
+    public void testTimestampPrefixAndRemainder() {
+        DateFilter subject = new DateFilter("[message]", "[result_ts]", failtagList);
+        subject.acceptFilterConfig("ISO8601", loc, tz);
+        subject.setPrefix(0, "[rest]");
+
+        Event event = new Event();
+        event.setField("[message]", "2016-11-03T21:10:57.123Z  GET /index.html 200");
+        Assert.assertSame(ParseExecutionResult.SUCCESS, subject.executeParsers(event));
+        assertEquals(new Timestamp("2016-11-03T21:10:57.123Z"), event.getField("[result_ts]"));
+        assertEquals("GET /index.html 200", event.getField("[rest]"));
+
+        Event failed = new Event();
+        failed.setField("[message]", "GET /index.html 200");
+        Assert.assertSame(ParseExecutionResult.FAIL, subject.executeParsers(failed));
+        Assert.assertNull(failed.getField("[rest]"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOnlyTextFormatsParsePrefixes() {
+        DateFilter subject = new DateFilter("[message]", "[result_ts]", failtagList);
+        subject.setPrefix(0, null);
+        subject.acceptFilterConfig("UNIX", loc, tz);
+    }
+
+    @Test
+    public void testIngestLag() {
+        DateFilter subject = new DateFilter("[happened_at]", "[result_ts]", failtagList);
+        subject.acceptFilterConfig("UNIX_MS", loc, tz);
+        Assert.assertTrue(subject.drainIngestLag().isEmpty());
+        subject.trackIngestLag();
+
+        Event event = new Event();
+        event.setField("[happened_at]", System.currentTimeMillis() - 60_000);
+        Assert.assertSame(ParseExecutionResult.SUCCESS, subject.executeParsers(event));
+        Event future = new Event();
+        future.setField("[happened_at]", System.currentTimeMillis() + 3_600_000);
+        Assert.assertSame(ParseExecutionResult.SUCCESS, subject.executeParsers(future));
+
+        Map<String, Long> lag = subject.drainIngestLag();
+        assertEquals(Long.valueOf(1), lag.get("events"));
+        assertEquals(Long.valueOf(1), lag.get("future_dated"));
+        Assert.assertTrue(lag.toString(), lag.get("p50_millis") >= 60_000 && lag.get("p50_millis") < 70_000);
+        assertEquals(lag.get("p50_millis"), lag.get("p99_millis"));
+    }
+
+    @Test
+    public void testIngestLagIsDrainedOncePerInterval() {
+        DateFilter subject = new DateFilter("[samples]", "[result_ts]", failtagList);
+        subject.acceptFilterConfig("UNIX_MS", loc, tz);
+        subject.trackIngestLag();
+
+        Event event = new Event();
+        long now = System.currentTimeMillis();
+        event.setField("[samples]", Arrays.asList(now - 60_000, now - 120_000));
+        Assert.assertSame(ParseExecutionResult.SUCCESS, subject.executeParsers(event));
+
+        Map<String, Long> lag = subject.drainIngestLag(60_000);
+        assertEquals(Long.valueOf(2), lag.get("events"));
+        Assert.assertNull(subject.drainIngestLag(60_000));
+        assertEquals(Long.valueOf(0), subject.drainIngestLag(0).get("events"));
+    }
+
+    @Test
+    public void testArraysAreParsedElementWise() {
+        DateFilter subject = new DateFilter("[samples]", "[result_ts]", failtagList);
+        subject.acceptFilterConfig("ISO8601", loc, tz);
+        subject.acceptFilterConfig("UNIX_MS", loc, tz);
+        subject.addTarget("[result_ms]", "epoch_millis");
+
+        Event event = new Event();
+        event.setField("[samples]", Arrays.asList(1478207457123L, 1478207458123L, "2016-11-03T21:10:59.123Z"));
+        Assert.assertSame(ParseExecutionResult.SUCCESS, subject.executeParsers(event));
+        assertEquals(Arrays.asList(new Timestamp("2016-11-03T21:10:57.123Z"), new Timestamp("2016-11-03T21:10:58.123Z"),
+                new Timestamp("2016-11-03T21:10:59.123Z")), event.getField("[result_ts]"));
+        assertEquals(Arrays.asList(1478207457123L, 1478207458123L, 1478207459123L), event.getField("[result_ms]"));
+
+        Event failed = new Event();
+        failed.setField("[samples]", Arrays.asList(1478207457123L, "not a date"));
+        Assert.assertSame(ParseExecutionResult.FAIL, subject.executeParsers(failed));
+        Assert.assertNull(failed.getField("[result_ts]"));
+    }
+
+    @Test
+    public void testArraysCannotGoToTimestampField() {
+        DateFilter subject = new DateFilter("[samples]", "@timestamp", failtagList);
+        subject.acceptFilterConfig("UNIX_MS", loc, tz);
+
+        Event event = new Event();
+        event.setField("[samples]", Collections.singletonList(1478207457123L));
+        Assert.assertSame(ParseExecutionResult.FAIL, subject.executeParsers(event));
+    }
+
+    @Test
+    public void testArraysFailBeforeAnyTargetWhenOneIsTimestampField() {
+        DateFilter subject = new DateFilter("[samples]", "[result_ts]", failtagList);
+        subject.acceptFilterConfig("UNIX_MS", loc, tz);
+        subject.addTarget("[result_ms]", "epoch_millis");
+        subject.addTarget("@timestamp", "timestamp");
+
+        Event event = new Event();
+        Timestamp before = event.getTimestamp();
+        event.setField("[samples]", Arrays.asList(1478207457123L, 1478207458123L));
+        Assert.assertSame(ParseExecutionResult.FAIL, subject.executeParsers(event));
+        Assert.assertNull(event.getField("[result_ts]"));
+        Assert.assertNull(event.getField("[result_ms]"));
+        assertEquals(before, event.getTimestamp());
+
+        Event scalar = new Event();
+        scalar.setField("[samples]", 1478207457123L);
+        Assert.assertSame(ParseExecutionResult.SUCCESS, subject.executeParsers(scalar));
+        assertEquals(new Timestamp("2016-11-03T21:10:57.123Z"), scalar.getTimestamp());
+    }
+
+    @Test
+    public void testTimeBucketTargets() {
+        DateFilter subject = new DateFilter("[happened_at]", "[result_ts]", failtagList);
+        subject.acceptFilterConfig("ISO8601", loc, tz);
+        subject.addTarget("[minute]", "timestamp_minute");
+        subject.addTarget("[day]", "timestamp_day");
+        subject.addTarget("[index_day]", "label:YYYY.MM.dd");
+
+        Event event = new Event();
+        event.setField("[happened_at]", "2016-11-03T21:10:57.123-05:00");
+        Assert.assertSame(ParseExecutionResult.SUCCESS, subject.executeParsers(event));
+        assertEquals(new Timestamp("2016-11-04T02:10:00Z"), event.getField("[minute]"));
+        assertEquals(new Timestamp("2016-11-04T00:00:00Z"), event.getField("[day]"));
+        assertEquals("2016.11.04", event.getField("[index_day]"));
+    }
+
     private void applyString(DateFilter subject, String supplied, String expected) {
         Event event = new Event();
         event.setField("[happened_at]", supplied);
@@ -0,0 +1,60 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class Iso8601FormatterTest {
+  private static final DateTimeFormatter MILLIS = DateTimeFormatter.ofPattern("uuuu-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+
+  private static String format(Iso8601Formatter formatter, Instant instant) {
+    int length = formatter.format(instant.getEpochSecond(), instant.getNano());
+    return new String(formatter.buffer(), 0, length, StandardCharsets.US_ASCII);
+  }
+
+  @Test
+  public void formatsLikeJavaTime() {
+    Iso8601Formatter formatter = new Iso8601Formatter();
+    Random random = new Random();
+    long millis = System.currentTimeMillis();
+    for (int i = 0; i < 10_000; i++) {
+      // Mostly nearby instants, as events come, with jumps to other hours and years now and then
+      millis += i % 100 == 0 ? random.nextLong() % 10_000_000_000_000L : random.nextInt(100_000);
+      Instant instant = Instant.ofEpochMilli(millis);
+      assertEquals(MILLIS.format(instant), format(formatter, instant));
+    }
+  }
+
+  @Test
+  public void keepsSubMillisecondPrecision() {
+    Iso8601Formatter formatter = new Iso8601Formatter();
+    assertEquals("2016-11-03T21:10:57.123456Z", format(formatter, Instant.parse("2016-11-03T21:10:57.123456Z")));
+    assertEquals("2016-11-03T21:10:57.123456789Z", format(formatter, Instant.parse("2016-11-03T21:10:57.123456789Z")));
+    assertEquals("1969-12-31T23:59:59.999Z", format(formatter, Instant.ofEpochMilli(-1)));
+  }
+}
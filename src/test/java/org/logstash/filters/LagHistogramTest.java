@@ -0,0 +1,63 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LagHistogramTest {
+  @Test
+  public void bucketsHoldTheirBoundsWithinAnEighth() {
+    for (long lag = 0; lag < 1_000_000; lag += 1 + lag / 100) {
+      int bucket = LagHistogram.bucket(lag);
+      assertTrue(lag + " in " + bucket, lag <= LagHistogram.upperBound(bucket));
+      assertTrue(lag + " in " + bucket, bucket == 0 || lag > LagHistogram.upperBound(bucket - 1));
+      assertTrue(lag + " in " + bucket, LagHistogram.upperBound(bucket) <= lag + lag / 8);
+    }
+    assertEquals(LagHistogram.BUCKETS - 1, LagHistogram.bucket(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void takesPercentilesOfTheLastInterval() {
+    LagHistogram histogram = new LagHistogram();
+    histogram.tick();
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < 98; i++) {
+      histogram.record(now - 5);
+    }
+    histogram.record(now - 1_000);
+    histogram.record(now - 60_000);
+    histogram.record(now + 60_000);
+
+    LagHistogram.Interval interval = histogram.drain();
+    assertEquals(100, interval.events);
+    assertEquals(1, interval.futureDated);
+    assertEquals(5, interval.percentile(0.5));
+    long p99 = interval.percentile(0.99);
+    assertTrue(String.valueOf(p99), p99 >= 1_000 && p99 <= 1_125);
+    assertTrue(String.valueOf(interval.maxMillis), interval.maxMillis >= 60_000 && interval.maxMillis <= 67_500);
+
+    LagHistogram.Interval next = histogram.drain();
+    assertEquals(0, next.events);
+    assertEquals(-1, next.percentile(0.5));
+  }
+}
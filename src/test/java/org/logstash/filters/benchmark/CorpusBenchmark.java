@@ -0,0 +1,333 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters.benchmark;
+
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+import org.logstash.filters.parser.FormatAutomaton;
+import org.logstash.filters.parser.TimestampParser;
+import org.logstash.filters.parser.TimestampParserFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Replays the corpus of timestamps through every parser engine named for each of its sections. Every engine must
+ * give the expected result of every line, through both the {@code String} and the {@code CharSequence} entry points,
+ * and the {@link FormatAutomaton} of the section must let it try every line it parses, so that a faster parser
+ * cannot silently change timestamps. The throughput and allocations of every engine are then
+ * measured, and compared to the ones recorded by an earlier run when a baseline is given: slowing down or
+ * allocating more than the allowed regression fails the run.
+ */
+public final class CorpusBenchmark {
+  static final String DEFAULT_CORPUS = "/corpus/timestamps.txt";
+  static final String FAILURE = "-";
+  private static final DateTimeFormatter ISO8601 = ISODateTimeFormat.dateTime().withZoneUTC();
+  // Allocations vary by a few bytes per operation from run to run, whatever the regression allowed
+  private static final double ALLOCATION_SLACK = 16;
+
+  static final class Section {
+    final String header;
+    final List<String> engines;
+    final List<String> inputs = new ArrayList<>();
+    final List<String> expected = new ArrayList<>();
+
+    Section(String header) {
+      this.header = header;
+      this.engines = Arrays.asList(header.split(" \\| "));
+    }
+  }
+
+  static final class Measure {
+    final double operationsPerSecond;
+    final double bytesPerOperation;
+
+    Measure(double operationsPerSecond, double bytesPerOperation) {
+      this.operationsPerSecond = operationsPerSecond;
+      this.bytesPerOperation = bytesPerOperation;
+    }
+  }
+
+  private final List<Section> sections;
+  private long sink;
+
+  CorpusBenchmark(List<Section> sections) {
+    this.sections = sections;
+  }
+
+  static CorpusBenchmark load(Reader corpus) throws IOException {
+    List<Section> sections = new ArrayList<>();
+    Section current = null;
+    BufferedReader reader = new BufferedReader(corpus);
+    String line;
+    int number = 0;
+    while ((line = reader.readLine()) != null) {
+      number++;
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      if (line.startsWith("[") && line.endsWith("]")) {
+        current = new Section(line.substring(1, line.length() - 1));
+        sections.add(current);
+        continue;
+      }
+      int tab = line.lastIndexOf('\t');
+      if (current == null || tab < 0) {
+        throw new IOException("Line " + number + " of the corpus is not in a section, or has no expected result: " + line);
+      }
+      current.inputs.add(line.substring(0, tab));
+      current.expected.add(line.substring(tab + 1));
+    }
+    return new CorpusBenchmark(sections);
+  }
+
+  List<Section> sections() {
+    return sections;
+  }
+
+  static CorpusBenchmark loadDefault() throws IOException {
+    InputStream corpus = CorpusBenchmark.class.getResourceAsStream(DEFAULT_CORPUS);
+    if (corpus == null) {
+      throw new IOException("The corpus " + DEFAULT_CORPUS + " is not on the classpath");
+    }
+    try (Reader reader = new InputStreamReader(corpus, StandardCharsets.UTF_8)) {
+      return load(reader);
+    }
+  }
+
+  private static TimestampParser engine(String name) {
+    return TimestampParserFactory.makeParser(name, Locale.US, "UTC");
+  }
+
+  /**
+   * Returns a description of every line on which an engine disagrees with the expected result.
+   */
+  List<String> verify() {
+    List<String> mismatches = new ArrayList<>();
+    for (Section section : sections) {
+      FormatAutomaton automaton = FormatAutomaton.of(section.engines.stream().map(CorpusBenchmark::engine).collect(Collectors.toList()));
+      for (int engine = 0; engine < section.engines.size(); engine++) {
+        String name = section.engines.get(engine);
+        // Fresh parsers for each entry point, as format detection depends on the inputs seen before
+        TimestampParser strings = engine(name);
+        TimestampParser sequences = engine(name);
+        for (int i = 0; i < section.inputs.size(); i++) {
+          String input = section.inputs.get(i);
+          String expected = section.expected.get(i);
+          String fromString = result(strings, input);
+          String fromSequence = result(sequences, new StringBuilder(input));
+          if (!expected.equals(fromString) || !expected.equals(fromSequence)) {
+            mismatches.add(String.format(Locale.ROOT, "[%s] %s: \"%s\" expected %s, got %s (String) and %s (CharSequence)",
+                    section.header, name, input, expected, fromString, fromSequence));
+          } else if (automaton != null && !expected.equals(FAILURE) && (automaton.candidates(input) & (1L << engine)) == 0) {
+            mismatches.add(String.format(Locale.ROOT, "[%s] %s: \"%s\" rejected by the format automaton", section.header, name, input));
+          }
+        }
+      }
+    }
+    return mismatches;
+  }
+
+  private static String result(TimestampParser parser, CharSequence input) {
+    try {
+      long millis = input instanceof String ? parser.parse((String) input).getMillis() : parser.parse(input).getMillis();
+      return ISO8601.print(millis);
+    } catch (IllegalArgumentException e) {
+      return FAILURE;
+    } catch (RuntimeException e) {
+      // The filter only expects invalid inputs to be reported with an IllegalArgumentException
+      return e.getClass().getName();
+    }
+  }
+
+  /**
+   * Measures every engine of every section on the inputs of the section, for the given time after as much warmup.
+   */
+  Map<String, Measure> measure(long nanos) {
+    Map<String, Measure> measures = new LinkedHashMap<>();
+    for (Section section : sections) {
+      for (String name : section.engines) {
+        TimestampParser parser = engine(name);
+        run(parser, section.inputs, nanos);
+        measures.put(key(section, name), run(parser, section.inputs, nanos));
+      }
+    }
+    return measures;
+  }
+
+  static String key(Section section, String engine) {
+    return "[" + section.header + "] " + engine;
+  }
+
+  private Measure run(TimestampParser parser, List<String> inputs, long nanos) {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    com.sun.management.ThreadMXBean allocations = threads instanceof com.sun.management.ThreadMXBean
+            ? (com.sun.management.ThreadMXBean) threads : null;
+    long thread = Thread.currentThread().getId();
+    long operations = 0;
+    long allocatedBefore = allocations == null ? 0 : allocations.getThreadAllocatedBytes(thread);
+    long start = System.nanoTime();
+    long elapsed;
+    do {
+      for (String input : inputs) {
+        try {
+          sink += parser.parse(input).getMillis();
+        } catch (RuntimeException e) {
+          sink++;
+        }
+      }
+      operations += inputs.size();
+      elapsed = System.nanoTime() - start;
+    } while (elapsed < nanos);
+    long allocated = allocations == null ? 0 : allocations.getThreadAllocatedBytes(thread) - allocatedBefore;
+    return new Measure(operations * 1e9 / elapsed, allocations == null ? Double.NaN : (double) allocated / operations);
+  }
+
+  /**
+   * Returns a description of every measure that is slower, or allocates more, than the baseline allows.
+   */
+  static List<String> regressions(Map<String, Measure> measures, Properties baseline, double maxRegression) {
+    List<String> regressions = new ArrayList<>();
+    for (Map.Entry<String, Measure> entry : measures.entrySet()) {
+      String operations = baseline.getProperty(entry.getKey() + " ops/s");
+      String bytes = baseline.getProperty(entry.getKey() + " bytes/op");
+      Measure measure = entry.getValue();
+      if (operations != null && measure.operationsPerSecond < Double.parseDouble(operations) * (1 - maxRegression)) {
+        regressions.add(String.format(Locale.ROOT, "%s: %.0f ops/s, down from %s", entry.getKey(), measure.operationsPerSecond, operations));
+      }
+      if (bytes != null && !Double.isNaN(measure.bytesPerOperation)
+              && measure.bytesPerOperation > Double.parseDouble(bytes) * (1 + maxRegression) + ALLOCATION_SLACK) {
+        regressions.add(String.format(Locale.ROOT, "%s: %.1f bytes/op, up from %s", entry.getKey(), measure.bytesPerOperation, bytes));
+      }
+    }
+    return regressions;
+  }
+
+  static Properties record(Map<String, Measure> measures) {
+    Properties properties = new Properties();
+    for (Map.Entry<String, Measure> entry : measures.entrySet()) {
+      properties.setProperty(entry.getKey() + " ops/s", String.format(Locale.ROOT, "%.0f", entry.getValue().operationsPerSecond));
+      if (!Double.isNaN(entry.getValue().bytesPerOperation)) {
+        properties.setProperty(entry.getKey() + " bytes/op", String.format(Locale.ROOT, "%.1f", entry.getValue().bytesPerOperation));
+      }
+    }
+    return properties;
+  }
+
+  private static void usage(String error) {
+    System.err.println(error);
+    System.err.println("usage: CorpusBenchmark [options]");
+    System.err.println("  --corpus <file>          corpus of timestamps, the one of the tests by default");
+    System.err.println("  --seconds <n>            measuring time of each engine, after as much warmup, 1 by default");
+    System.err.println("  --baseline <file>        measures of an earlier run to compare with");
+    System.err.println("  --max-regression <ratio> slowdown or allocation growth allowed over the baseline, 0.1 by default");
+    System.err.println("  --record <file>          where to write the measures of this run, as a later baseline");
+    System.err.println("  --verify-only            only check the results of the engines");
+    System.exit(2);
+  }
+
+  public static void main(String[] args) throws IOException {
+    String corpus = null;
+    String baselineFile = null;
+    String recordFile = null;
+    double seconds = 1;
+    double maxRegression = 0.1;
+    boolean verifyOnly = false;
+
+    try {
+      for (int i = 0; i < args.length; i++) {
+        String arg = args[i];
+        if (arg.equals("--verify-only")) {
+          verifyOnly = true;
+          continue;
+        }
+        if (i + 1 >= args.length) {
+          usage("Missing value for " + arg);
+        }
+        String value = args[++i];
+        switch (arg) {
+          case "--corpus": corpus = value; break;
+          case "--seconds": seconds = Double.parseDouble(value); break;
+          case "--baseline": baselineFile = value; break;
+          case "--max-regression": maxRegression = Double.parseDouble(value); break;
+          case "--record": recordFile = value; break;
+          default: usage("Unknown option " + arg);
+        }
+      }
+    } catch (IllegalArgumentException e) {
+      usage("Invalid option value: " + e.getMessage());
+    }
+
+    CorpusBenchmark benchmark;
+    if (corpus == null) {
+      benchmark = loadDefault();
+    } else {
+      try (Reader reader = Files.newBufferedReader(Paths.get(corpus), StandardCharsets.UTF_8)) {
+        benchmark = load(reader);
+      }
+    }
+
+    List<String> mismatches = benchmark.verify();
+    mismatches.forEach(System.err::println);
+    System.err.println(mismatches.size() + " mismatches");
+    if (verifyOnly || !mismatches.isEmpty()) {
+      System.exit(mismatches.isEmpty() ? 0 : 1);
+    }
+
+    Map<String, Measure> measures = benchmark.measure((long) (seconds * TimeUnit.SECONDS.toNanos(1)));
+    for (Map.Entry<String, Measure> entry : measures.entrySet()) {
+      System.out.println(String.format(Locale.ROOT, "%-70s %12.0f ops/s %10.1f bytes/op",
+              entry.getKey(), entry.getValue().operationsPerSecond, entry.getValue().bytesPerOperation));
+    }
+    if (recordFile != null) {
+      try (OutputStream out = Files.newOutputStream(Paths.get(recordFile))) {
+        record(measures).store(out, "Corpus benchmark measures");
+      }
+    }
+    if (baselineFile != null) {
+      Properties baseline = new Properties();
+      try (InputStream in = Files.newInputStream(Paths.get(baselineFile))) {
+        baseline.load(in);
+      }
+      List<String> regressions = regressions(measures, baseline, maxRegression);
+      regressions.forEach(System.err::println);
+      System.err.println(regressions.size() + " regressions");
+      System.exit(regressions.isEmpty() ? 0 : 1);
+    }
+  }
+}
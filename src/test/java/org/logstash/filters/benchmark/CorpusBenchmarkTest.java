@@ -0,0 +1,65 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters.benchmark;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+
+public class CorpusBenchmarkTest {
+  @Test
+  public void everyEngineGivesTheExpectedResults() throws Exception {
+    assertEquals(Collections.emptyList(), CorpusBenchmark.loadDefault().verify());
+  }
+
+  @Test
+  public void reportsMismatches() throws Exception {
+    CorpusBenchmark benchmark = CorpusBenchmark.load(new StringReader(
+            "[ISO8601 | UNIX_MS]\n2016-11-03T21:10:57.123Z\t2016-11-03T21:10:57.123Z\nnot a date\t-\n"));
+    List<String> mismatches = benchmark.verify();
+    assertEquals(1, mismatches.size());
+    assertEquals("[ISO8601 | UNIX_MS] UNIX_MS: \"2016-11-03T21:10:57.123Z\" expected 2016-11-03T21:10:57.123Z, got - (String) and - (CharSequence)",
+            mismatches.get(0));
+  }
+
+  @Test
+  public void reportsRegressionsOverTheBaseline() {
+    Map<String, CorpusBenchmark.Measure> measures = new LinkedHashMap<>();
+    measures.put("[ISO8601] ISO8601", new CorpusBenchmark.Measure(850_000, 120));
+    measures.put("[UNIX] UNIX", new CorpusBenchmark.Measure(5_000_000, 200));
+    Properties baseline = new Properties();
+    baseline.setProperty("[ISO8601] ISO8601 ops/s", "1000000");
+    baseline.setProperty("[ISO8601] ISO8601 bytes/op", "110");
+    baseline.setProperty("[UNIX] UNIX ops/s", "4000000");
+    baseline.setProperty("[UNIX] UNIX bytes/op", "100");
+
+    List<String> regressions = CorpusBenchmark.regressions(measures, baseline, 0.1);
+    assertEquals(2, regressions.size());
+    assertEquals("[ISO8601] ISO8601: 850000 ops/s, down from 1000000", regressions.get(0));
+    assertEquals("[UNIX] UNIX: 200.0 bytes/op, up from 100", regressions.get(1));
+  }
+}
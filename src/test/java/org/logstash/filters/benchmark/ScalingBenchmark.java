@@ -0,0 +1,310 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters.benchmark;
+
+import org.logstash.Event;
+import org.logstash.RubyUtil;
+import org.logstash.ext.JrubyEventExtLibrary.RubyEvent;
+import org.logstash.filters.DateFilter;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Runs batches of events through one {@link DateFilter} from 1 to N threads, the way pipeline workers share a filter,
+ * and reports how the throughput scales. The same runs with a filter per thread are the control: when those scale
+ * and the shared filter does not, the difference comes from state shared in the filter or its parsers.
+ *
+ * Lock contention shows in the time the threads spend blocked or waiting. Contention on CAS loops and false sharing
+ * of cache lines do not block threads, and show instead as more CPU time per event on the shared filter than on the
+ * private ones with as many threads. A shared filter whose scaling efficiency, its throughput over the one of a single
+ * thread times the number of threads, drops below the minimum fails the run.
+ */
+public final class ScalingBenchmark {
+  // The default pipeline.batch.size
+  static final int BATCH_SIZE = 125;
+  static final String SOURCE = "message";
+  static final String TARGET = "parsed";
+
+  private static final int WARMING_UP = 0;
+  private static final int MEASURING = 1;
+  private static final int STOPPED = 2;
+
+  static final class Run {
+    final int threads;
+    final boolean shared;
+    final double eventsPerSecond;
+    final double cpuNanosPerEvent;
+    final long blockedMillis;
+    final long waitedMillis;
+
+    Run(int threads, boolean shared, double eventsPerSecond, double cpuNanosPerEvent, long blockedMillis, long waitedMillis) {
+      this.threads = threads;
+      this.shared = shared;
+      this.eventsPerSecond = eventsPerSecond;
+      this.cpuNanosPerEvent = cpuNanosPerEvent;
+      this.blockedMillis = blockedMillis;
+      this.waitedMillis = waitedMillis;
+    }
+  }
+
+  private final String format;
+  private final List<String> inputs;
+  // Only read by the workers, so its cache line stays shared between their cores
+  private volatile int phase;
+
+  ScalingBenchmark(String format, List<String> inputs) {
+    this.format = format;
+    this.inputs = inputs;
+  }
+
+  /**
+   * Takes the inputs of the first corpus section that the format reads.
+   */
+  static ScalingBenchmark forFormat(String format) throws IOException {
+    for (CorpusBenchmark.Section section : CorpusBenchmark.loadDefault().sections()) {
+      if (section.engines.contains(format)) {
+        return new ScalingBenchmark(format, section.inputs);
+      }
+    }
+    throw new IOException("No section of the corpus is read with " + format);
+  }
+
+  /**
+   * The filter of a private run has parsers of its own, so that nothing is shared between the threads of the control.
+   */
+  DateFilter newFilter(boolean shareParser) {
+    DateFilter filter = new DateFilter(SOURCE, TARGET, Collections.singletonList("_dateparsefailure"), (matched, failed) -> {});
+    filter.acceptFilterConfig(format, "en-US", "UTC", shareParser);
+    return filter;
+  }
+
+  /**
+   * Runs the given number of threads for the given time after as much warmup, on one filter or on one per thread.
+   * Throws the error of the first thread that failed, once every thread stopped.
+   */
+  Run run(int threads, boolean shared, long nanos) throws InterruptedException {
+    ThreadMXBean management = ManagementFactory.getThreadMXBean();
+    if (management.isThreadContentionMonitoringSupported()) {
+      management.setThreadContentionMonitoringEnabled(true);
+    }
+    DateFilter sharedFilter = shared ? newFilter(true) : null;
+    Supplier<DateFilter> filters = shared ? () -> sharedFilter : () -> newFilter(false);
+
+    long[] events = new long[threads];
+    long[] cpuNanos = new long[threads];
+    long[] blockedMillis = new long[threads];
+    long[] waitedMillis = new long[threads];
+    phase = WARMING_UP;
+    CountDownLatch ready = new CountDownLatch(threads);
+    CountDownLatch done = new CountDownLatch(threads);
+    AtomicReference<Throwable> error = new AtomicReference<>();
+
+    for (int t = 0; t < threads; t++) {
+      int index = t;
+      Thread worker = new Thread(() -> {
+        boolean started = false;
+        try {
+          DateFilter filter = filters.get();
+          List<RubyEvent> batch = batch(index);
+          ready.countDown();
+          started = true;
+          long count = 0;
+          long cpuStart = -1;
+          ThreadInfo start = null;
+          while (true) {
+            int current = phase;
+            if (current == STOPPED) {
+              break;
+            }
+            if (current == MEASURING && cpuStart < 0) {
+              cpuStart = management.getCurrentThreadCpuTime();
+              start = management.getThreadInfo(Thread.currentThread().getId());
+              count = 0;
+            }
+            filter.receive(batch);
+            count += batch.size();
+          }
+          ThreadInfo end = management.getThreadInfo(Thread.currentThread().getId());
+          events[index] = count;
+          cpuNanos[index] = management.getCurrentThreadCpuTime() - cpuStart;
+          if (start != null && start.getBlockedTime() >= 0) {
+            blockedMillis[index] = end.getBlockedTime() - start.getBlockedTime();
+            waitedMillis[index] = end.getWaitedTime() - start.getWaitedTime();
+          }
+        } catch (Throwable e) {
+          error.compareAndSet(null, e);
+        } finally {
+          if (!started) {
+            ready.countDown();
+          }
+          done.countDown();
+        }
+      }, "scaling-benchmark-" + t);
+      worker.setDaemon(true);
+      worker.start();
+    }
+
+    ready.await();
+    TimeUnit.NANOSECONDS.sleep(nanos);
+    phase = MEASURING;
+    long measureStart = System.nanoTime();
+    TimeUnit.NANOSECONDS.sleep(nanos);
+    phase = STOPPED;
+    long elapsed = System.nanoTime() - measureStart;
+    done.await();
+    if (error.get() != null) {
+      throw new IllegalStateException("A thread of the " + threads + " thread run failed", error.get());
+    }
+
+    long totalEvents = 0;
+    long totalCpu = 0;
+    long blocked = 0;
+    long waited = 0;
+    for (int t = 0; t < threads; t++) {
+      totalEvents += events[t];
+      totalCpu += cpuNanos[t];
+      blocked += blockedMillis[t];
+      waited += waitedMillis[t];
+    }
+    return new Run(threads, shared, totalEvents * 1e9 / elapsed, totalEvents == 0 ? Double.NaN : (double) totalCpu / totalEvents, blocked, waited);
+  }
+
+  private List<RubyEvent> batch(int offset) {
+    List<RubyEvent> batch = new ArrayList<>(BATCH_SIZE);
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      Event event = new Event();
+      event.setField(SOURCE, inputs.get((offset * BATCH_SIZE + i) % inputs.size()));
+      batch.add(RubyEvent.newRubyEvent(RubyUtil.RUBY, event));
+    }
+    return batch;
+  }
+
+  static List<Integer> threadCounts(int max) {
+    List<Integer> counts = new ArrayList<>();
+    for (int threads = 1; threads < max; threads *= 2) {
+      counts.add(threads);
+    }
+    counts.add(max);
+    return counts;
+  }
+
+  /**
+   * The throughput of a run over the one of a single thread times the number of threads.
+   */
+  static double efficiency(Run run, Run single) {
+    return run.eventsPerSecond / (run.threads * single.eventsPerSecond);
+  }
+
+  /**
+   * Returns a description of every run on the shared filter that scales worse than the minimum efficiency.
+   */
+  static List<String> failures(List<Run> runs, double minEfficiency) {
+    List<String> failures = new ArrayList<>();
+    Run single = runs.stream().filter(run -> run.shared && run.threads == 1).findFirst().orElse(null);
+    if (single == null) {
+      return failures;
+    }
+    for (Run run : runs) {
+      if (run.shared && efficiency(run, single) < minEfficiency) {
+        failures.add(String.format(Locale.ROOT, "%d threads: %.0f events/s, a scaling efficiency of %.2f below %.2f",
+                run.threads, run.eventsPerSecond, efficiency(run, single), minEfficiency));
+      }
+    }
+    return failures;
+  }
+
+  private static void usage(String error) {
+    System.err.println(error);
+    System.err.println("usage: ScalingBenchmark [options]");
+    System.err.println("  --format <format>          date format of the filter, read on its corpus section, ISO8601 by default");
+    System.err.println("  --threads <n>              largest number of threads, the number of processors by default");
+    System.err.println("  --seconds <n>              measuring time of each run, after as much warmup, 1 by default");
+    System.err.println("  --min-efficiency <ratio>   scaling efficiency below which the run fails, 0.7 by default");
+    System.exit(2);
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    String format = "ISO8601";
+    int maxThreads = Runtime.getRuntime().availableProcessors();
+    double seconds = 1;
+    double minEfficiency = 0.7;
+
+    try {
+      for (int i = 0; i < args.length; i++) {
+        String arg = args[i];
+        if (i + 1 >= args.length) {
+          usage("Missing value for " + arg);
+        }
+        String value = args[++i];
+        switch (arg) {
+          case "--format": format = value; break;
+          case "--threads": maxThreads = Integer.parseInt(value); break;
+          case "--seconds": seconds = Double.parseDouble(value); break;
+          case "--min-efficiency": minEfficiency = Double.parseDouble(value); break;
+          default: usage("Unknown option " + arg);
+        }
+      }
+    } catch (IllegalArgumentException e) {
+      usage("Invalid option value: " + e.getMessage());
+    }
+
+    ScalingBenchmark benchmark = forFormat(format);
+    long nanos = (long) (seconds * TimeUnit.SECONDS.toNanos(1));
+    List<Run> runs = new ArrayList<>();
+    Run singleShared = null;
+    Run singlePrivate = null;
+    System.out.println(String.format(Locale.ROOT, "%-8s %-8s %14s %10s %12s %12s %12s %14s",
+            "threads", "filter", "events/s", "efficiency", "cpu ns/event", "blocked ms", "waited ms", "cpu vs private"));
+    for (int threads : threadCounts(maxThreads)) {
+      Run privateRun = benchmark.run(threads, false, nanos);
+      Run sharedRun = benchmark.run(threads, true, nanos);
+      if (threads == 1) {
+        singlePrivate = privateRun;
+        singleShared = sharedRun;
+      }
+      runs.add(privateRun);
+      runs.add(sharedRun);
+      print(privateRun, singlePrivate, privateRun);
+      print(sharedRun, singleShared, privateRun);
+    }
+
+    List<String> failures = failures(runs, minEfficiency);
+    failures.forEach(System.err::println);
+    System.err.println(failures.size() + " runs below the minimum scaling efficiency");
+    System.exit(failures.isEmpty() ? 0 : 1);
+  }
+
+  private static void print(Run run, Run single, Run control) {
+    System.out.println(String.format(Locale.ROOT, "%-8d %-8s %14.0f %10.2f %12.1f %12d %12d %14.2f",
+            run.threads, run.shared ? "shared" : "private", run.eventsPerSecond, efficiency(run, single),
+            run.cpuNanosPerEvent, run.blockedMillis, run.waitedMillis, run.cpuNanosPerEvent / control.cpuNanosPerEvent));
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters.benchmark;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ScalingBenchmarkTest {
+  @Test
+  public void countsThreadsByPowersOfTwoUpToTheMaximum() {
+    assertEquals(Collections.singletonList(1), ScalingBenchmark.threadCounts(1));
+    assertEquals(Arrays.asList(1, 2, 4, 6), ScalingBenchmark.threadCounts(6));
+    assertEquals(Arrays.asList(1, 2, 4, 8), ScalingBenchmark.threadCounts(8));
+  }
+
+  @Test
+  public void failsTheSharedRunsBelowTheMinimumEfficiency() {
+    List<ScalingBenchmark.Run> runs = Arrays.asList(
+            new ScalingBenchmark.Run(1, false, 1_000_000, 1000, 0, 0),
+            new ScalingBenchmark.Run(1, true, 1_000_000, 1000, 0, 0),
+            new ScalingBenchmark.Run(4, false, 3_800_000, 1050, 0, 0),
+            new ScalingBenchmark.Run(4, true, 2_000_000, 1900, 120, 0));
+    assertEquals(0.5, ScalingBenchmark.efficiency(runs.get(3), runs.get(1)), 1e-9);
+
+    List<String> failures = ScalingBenchmark.failures(runs, 0.7);
+    assertEquals(Collections.singletonList("4 threads: 2000000 events/s, a scaling efficiency of 0.50 below 0.70"), failures);
+    assertEquals(Collections.emptyList(), ScalingBenchmark.failures(runs, 0.5));
+  }
+
+  @Test
+  public void measuresEveryThreadOnTheSharedFilter() throws Exception {
+    ScalingBenchmark.Run run = ScalingBenchmark.forFormat("ISO8601").run(2, true, 50_000_000);
+    assertEquals(2, run.threads);
+    assertTrue(run.eventsPerSecond > 0);
+    assertTrue(run.cpuNanosPerEvent > 0);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void reportsAThreadThatFailedInsteadOfWaitingForIt() throws Exception {
+    // Building a batch out of no inputs fails in every thread
+    new ScalingBenchmark("ISO8601", Collections.emptyList()).run(2, false, 1_000_000);
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters.bulk;
+
+import org.joda.time.format.ISODateTimeFormat;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class BulkParseTest {
+  private String run(BulkParse bulkParse, String input, int threads) throws IOException, InterruptedException {
+    Path file = Files.createTempFile("bulk-parse", ".txt");
+    try {
+      Files.write(file, input.getBytes(StandardCharsets.UTF_8));
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      bulkParse.run(file, out, threads);
+      return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void parsesEveryLineInOrder() throws Exception {
+    BulkParse bulkParse = new BulkParse(Arrays.asList("ISO8601", "UNIX_MS"), "en", "UTC", 0, '\t', 0, BulkParse.Output.ISO8601);
+    StringBuilder input = new StringBuilder();
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      input.append(1000000000000L + i * 1000L).append('\n');
+      input.append("2001-09-09T01:46:40.").append(String.format("%03d", i)).append("Z\r\n");
+      input.append("garbage\n");
+      expected.append(ISODateTimeFormat.dateTime().withZoneUTC().print(1000000000000L + i * 1000L)).append('\n');
+      expected.append("2001-09-09T01:46:40.").append(String.format("%03d", i)).append("Z\n");
+      expected.append("\n");
+    }
+    assertEquals(expected.toString(), run(bulkParse, input.toString(), 3));
+  }
+
+  @Test
+  public void parsesSelectedFieldPrefix() throws Exception {
+    BulkParse bulkParse = new BulkParse(Arrays.asList("yyyy-MM-dd HH:mm:ss"), "en", "UTC", 2, ',', 19, BulkParse.Output.MILLIS);
+    String input = "a,2016-11-03 21:10:57 some text,c\nb\nc,2016-11-03 21:10:58";
+    assertEquals("1478207457000\n\n1478207458000\n", run(bulkParse, input, 1));
+  }
+
+  @Test
+  public void keepsTheNanosecondsOfPreciseEpochs() throws Exception {
+    BulkParse bulkParse = new BulkParse(Arrays.asList("UNIX_AUTO"), "en", "UTC", 0, '\t', 0, BulkParse.Output.ISO8601);
+    assertEquals("2016-11-03T21:10:57.123456789Z\n2016-11-03T21:10:57.123456Z\n",
+            run(bulkParse, "1478207457123456789\n1478207457123456\n", 1));
+    BulkParse millis = new BulkParse(Arrays.asList("UNIX_NS"), "en", "UTC", 0, '\t', 0, BulkParse.Output.MILLIS);
+    assertEquals("1478207457123\n", run(millis, "1478207457123456789\n", 1));
+  }
+
+  @Test
+  public void acceptsOnlyOneAsciiDelimiter() {
+    assertEquals(',', BulkParse.parseDelimiter(","));
+    assertEquals('\t', BulkParse.parseDelimiter("\t"));
+    for (String delimiter : new String[] { "", ",;", "\u00a7", "\ud83d\ude00" }) {
+      try {
+        BulkParse.parseDelimiter(delimiter);
+        fail("Accepted " + delimiter);
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void leavesTheStandardOutputOpen() throws Exception {
+    Path file = Files.createTempFile("bulk-parse", ".txt");
+    PrintStream stdout = System.out;
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    boolean[] closed = new boolean[1];
+    try {
+      Files.write(file, "1478207457000\n".getBytes(StandardCharsets.UTF_8));
+      System.setOut(new PrintStream(out) {
+        @Override
+        public void close() {
+          closed[0] = true;
+          super.close();
+        }
+      });
+      BulkParse.main(new String[] { "--format", "UNIX_MS", file.toString(), "-" });
+    } finally {
+      System.setOut(stdout);
+      Files.delete(file);
+    }
+    assertFalse(closed[0]);
+    assertEquals("1478207457000\n", new String(out.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void parsesNonAsciiLines() throws Exception {
+    BulkParse bulkParse = new BulkParse(Arrays.asList("yyyy-MM-dd'\u00e0'HH:mm:ss"), "en", "UTC", 0, '\t', 0, BulkParse.Output.MILLIS);
+    assertEquals("1478207457000\n", run(bulkParse, "2016-11-03\u00e021:10:57\n", 2));
+  }
+}
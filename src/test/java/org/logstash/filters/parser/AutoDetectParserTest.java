@@ -0,0 +1,99 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters.parser;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.Instant;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+
+public class AutoDetectParserTest {
+  private static final Instant EXPECTED = new Instant(1478207457123L);
+  private static final Instant EXPECTED_SECONDS = new Instant(1478207457000L);
+
+  @Test
+  public void parsesEpochs() {
+    AutoDetectParser parser = new AutoDetectParser("UTC");
+    assertEquals(EXPECTED_SECONDS, parser.parse("1478207457"));
+    assertEquals(EXPECTED, parser.parse("1478207457.123"));
+    assertEquals(EXPECTED, parser.parse("1478207457123"));
+    assertEquals(EXPECTED, parser.parse("1478207457123456"));
+    assertEquals(EXPECTED, parser.parse("1478207457123456789"));
+    assertEquals(EXPECTED_SECONDS, parser.parse(1478207457L));
+    assertEquals(EXPECTED, parser.parse(1478207457123L));
+    assertEquals(EXPECTED, parser.parse(1478207457123456L));
+    assertEquals(EXPECTED, parser.parse(1478207457.123D));
+    assertEquals(EXPECTED, parser.parse(new BigDecimal("1478207457.123")));
+  }
+
+  @Test
+  public void parsesText() {
+    AutoDetectParser parser = new AutoDetectParser("UTC");
+    assertEquals(EXPECTED, parser.parse("2016-11-03T21:10:57.123Z"));
+    assertEquals(EXPECTED, parser.parse("2016-11-03 21:10:57,123"));
+    assertEquals(EXPECTED_SECONDS, parser.parse("03/Nov/2016:22:10:57 +0100"));
+    assertEquals(EXPECTED_SECONDS, parser.parse("Thu, 03 Nov 2016 21:10:57 +0000"));
+    assertEquals(EXPECTED_SECONDS, parser.parse("Thu, 03 Nov 2016 21:10:57 GMT"));
+    assertEquals(EXPECTED_SECONDS, parser.parse("Nov 03 2016 21:10:57"));
+    assertEquals(new Instant(1356138046767L), parser.parse("@4000000050d506482dbdf024"));
+    assertEquals(7, parser.parse("Apr  7 09:32:01").toDateTime(DateTimeZone.UTC).getDayOfMonth());
+    assertEquals(17, parser.parse("Apr 17 09:32:01").toDateTime(DateTimeZone.UTC).getDayOfMonth());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsUnknownShapes() {
+    new AutoDetectParser("UTC").parse("yesterday at noon");
+  }
+
+  @Test
+  public void keepsParsingOtherShapesOnceLocked() {
+    AutoDetectParser parser = new AutoDetectParser("UTC");
+    for (int i = 0; i < AutoDetectParser.DETECTION_SAMPLES * 2; i++) {
+      assertEquals(EXPECTED, parser.parse("2016-11-03T21:10:57.123Z"));
+    }
+    for (int i = 0; i < AutoDetectParser.DETECTION_SAMPLES * 2; i++) {
+      assertEquals(EXPECTED, parser.parse("1478207457123"));
+    }
+    assertEquals(EXPECTED, parser.parse("2016-11-03T21:10:57.123Z"));
+  }
+
+  @Test
+  public void readsTheUnitOfEveryEpochFromItsMagnitude() {
+    AutoDetectParser parser = new AutoDetectParser("UTC");
+    for (int i = 0; i < AutoDetectParser.DETECTION_SAMPLES * 2; i++) {
+      assertEquals(EXPECTED, parser.parse("1478207457123"));
+    }
+    assertEquals(EXPECTED_SECONDS, parser.parse("1478207457"));
+    for (int i = 0; i < AutoDetectParser.DETECTION_SAMPLES * 2; i++) {
+      assertEquals(EXPECTED, parser.parse("1478207457123456"));
+    }
+    assertEquals(EXPECTED, parser.parse("1478207457123"));
+    assertEquals(EXPECTED, parser.parse("1478207457.123"));
+  }
+
+  @Test
+  public void parsesWithTimezoneFromEvent() {
+    AutoDetectParser parser = new AutoDetectParser(null);
+    assertEquals(new Instant(1478203857123L), parser.parseWithTimeZone("2016-11-03T21:10:57.123", "Europe/Paris"));
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters.parser;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class DigitsTest {
+  @Test
+  public void parsesLikeLongParseLong() {
+    Random random = new Random();
+    for (int i = 0; i < 10_000; i++) {
+      String digits = Long.toString(random.nextLong() & Long.MAX_VALUE);
+      digits = digits.substring(0, 1 + random.nextInt(Math.min(18, digits.length())));
+      assertEquals(digits, Long.parseLong(digits), Digits.parse(digits, 0, digits.length()));
+    }
+    assertEquals(7, Digits.parse("000000007", 0, 9));
+    assertEquals(12345678, Digits.parse("x12345678x", 1, 9));
+  }
+
+  @Test
+  public void rejectsAnythingElse() {
+    assertEquals(Digits.INVALID, Digits.parse("", 0, 0));
+    assertEquals(Digits.INVALID, Digits.parse("-1234567", 0, 8));
+    assertEquals(Digits.INVALID, Digits.parse("+1234567", 0, 8));
+    assertEquals(Digits.INVALID, Digits.parse("1234 678", 0, 8));
+    assertEquals(Digits.INVALID, Digits.parse("1234567:", 0, 8));
+    assertEquals(Digits.INVALID, Digits.parse("/1234567", 0, 8));
+    assertEquals(Digits.INVALID, Digits.parse("123456789/", 0, 10));
+    // Arabic-Indic digits, which Long.parseLong accepts and the callers leave to it
+    assertEquals(Digits.INVALID, Digits.parse("1234567\u0668", 0, 8));
+    assertEquals(Digits.INVALID, Digits.parse("1234567\u0138", 0, 8));
+    assertEquals(Digits.INVALID, Digits.parse("1234567890123456789", 0, 19));
+  }
+
+  @Test
+  public void parsesAroundSeparators() {
+    long dateSeparators = 0xFF0000FF00000000L;
+    long dashes = ((long) '-' << 32) | ((long) '-' << 56);
+    assertEquals(20160110, Digits.parse("2016-11-03", 0, dateSeparators, dashes));
+    assertEquals(Digits.INVALID, Digits.parse("2016/11/03", 0, dateSeparators, dashes));
+    assertEquals(Digits.INVALID, Digits.parse("2016-1a-03", 0, dateSeparators, dashes));
+  }
+}
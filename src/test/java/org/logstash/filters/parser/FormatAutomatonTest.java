@@ -0,0 +1,87 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters.parser;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class FormatAutomatonTest {
+  private static FormatAutomaton automaton(String... formats) {
+    List<TimestampParser> parsers = new ArrayList<>();
+    for (String format : formats) {
+      parsers.add(TimestampParserFactory.makeParser(format, Locale.US, "UTC"));
+    }
+    return FormatAutomaton.of(parsers);
+  }
+
+  @Test
+  public void findsTheFormatsOfTheValueShape() {
+    FormatAutomaton automaton = automaton("ISO8601", "dd/MMM/yyyy:HH:mm:ss Z", "MMM dd yyyy HH:mm:ss", "yyyy-MM-dd HH:mm:ss ZZZ",
+            "yyyyMMdd'T'HHmmss", "UNIX");
+    // UNIX has no shape, it is always a candidate
+    assertEquals(0b100001, automaton.candidates("2016-11-03T21:10:57.123Z"));
+    assertEquals(0b100001, automaton.candidates("2016-11-03 21:10:57,123"));
+    assertEquals(0b100010, automaton.candidates("03/Nov/2016:21:10:57 +0100"));
+    assertEquals(0b100100, automaton.candidates("Nov 03 2016 21:10:57"));
+    assertEquals(0b101000, automaton.candidates("2016-11-03 21:10:57 America/Argentina/Buenos_Aires"));
+    // Only the characters of ISO8601 values are followed
+    assertEquals(0b110001, automaton.candidates("20161103t211057"));
+    assertEquals(0b100001, automaton.candidates("1478207457"));
+    assertEquals(0b100000, automaton.candidates("not a date"));
+    assertEquals(0b100000, automaton.candidates(""));
+  }
+
+  @Test
+  public void followsLiteralsAndNames() {
+    FormatAutomaton automaton = automaton("EEE, dd MMM yyyy HH:mm:ss 'GMT'", "HH 'o''clock' dd.MM.yy");
+    assertEquals(0b01, automaton.candidates("Thu, 03 Nov 2016 21:10:57 GMT"));
+    assertEquals(0b01, automaton.candidates("jeu., 03 nov. 2016 21:10:57 gmt"));
+    assertEquals(0b00, automaton.candidates("Thu, 03 Nov 2016 21:10:57 UTC"));
+    assertEquals(0b10, automaton.candidates("21 o'clock 03.11.16"));
+    assertEquals(0b00, automaton.candidates("21 oclock 03.11.16"));
+    // Names may be in any script
+    assertEquals(0b01, automaton.candidates("\u6728, 03 11\u6708 2016 21:10:57 GMT"));
+  }
+
+  @Test
+  public void handlesFormatsBeyondOneWord() {
+    String[] formats = new String[20];
+    for (int i = 0; i < formats.length; i++) {
+      formats[i] = "yyyy-MM-dd'T'HH:mm:ss.SSS'" + (char) ('a' + i) + "'";
+    }
+    FormatAutomaton automaton = automaton(formats);
+    for (int i = 0; i < formats.length; i++) {
+      assertEquals(1L << i, automaton.candidates("2016-11-03T21:10:57.123" + (char) ('a' + i)));
+    }
+  }
+
+  @Test
+  public void needsAShapeToFollow() {
+    assertNull(automaton("UNIX", "UNIX_MS", "TAI64N", "AUTO"));
+    assertNull(FormatAutomaton.of(Arrays.asList(new TimestampParser[FormatAutomaton.MAX_FORMATS + 1])));
+  }
+}
@@ -19,10 +19,17 @@
 
 package org.logstash.filters.parser;
 
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.joda.time.Instant;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
 import org.junit.Test;
 
+import java.util.Locale;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 public class JodaParserTest {
   @Test(expected = IllegalArgumentException.class)
@@ -36,4 +43,96 @@ public class JodaParserTest {
     Instant instant = parser.parse("2016");
     assertEquals(2016, instant.toDateTime().getYear());
   }
+
+  @Test
+  public void charSequenceInput() {
+    JodaParser parser = new JodaParser("yyyy-MM-dd HH:mm:ss", null, "UTC");
+    assertEquals(parser.parse("2016-11-03 21:10:57"), parser.parse(new StringBuilder("2016-11-03 21:10:57")));
+  }
+
+  @Test
+  public void zonesParseLikeJoda() {
+    assertParsesLikeJoda("yyyy-MM-dd HH:mm:ss ZZZ", "2016-11-03 21:10:57 Europe/Berlin", "2016-11-03 21:10:57 UTC",
+            "2016-11-03 21:10:57 America/Argentina/Buenos_Aires", "2016-11-03 21:10:57 America/Argentina/Cordoba",
+            "2016-11-03 21:10:57 Etc/GMT+1", "2016-11-03 21:10:57 Etc/GMT+10", "2016-11-03 21:10:57 Etc/GMT+1",
+            "2016-11-03 21:10:57 Europe/Berlin", "2016-11-03 21:10:57 America/New_York");
+    assertParsesLikeJoda("ZZZ yyyy-MM-dd'T'HH:mm:ss", "Asia/Tokyo 2016-11-03T21:10:57", "Etc/GMT+10 2016-11-03T21:10:57");
+    assertParsesLikeJoda("yyyy-MM-dd HH:mm:ss z", "2016-11-03 21:10:57 EST", "2016-11-03 21:10:57 PDT", "2016-11-03 21:10:57 UTC");
+    assertParsesLikeJoda("yyyy-MM-dd 'ZZZ' HH:mm ZZZ", "2016-11-03 ZZZ 21:10 Europe/Paris");
+  }
+
+  @Test
+  public void zonesBeforeASlashParseLikeJoda() {
+    assertParsesLikeJoda("yyyy-MM-dd ZZZ'/'", "2016-11-03 Europe/Paris/");
+    assertParsesLikeJoda("yyyy-MM-dd ZZZ'x'", "2016-11-03 Europe/Parisx");
+    assertParsesLikeJoda("yyyy-MM-dd ZZZ'/x'", "2016-11-03 Europe/Paris/x");
+    assertFailsLikeJoda("yyyy-MM-dd ZZZ'/x'", "2016-11-03 UTC/x", "2016-11-03 Etc/UTC/y");
+    assertFailsLikeJoda("yyyy-MM-dd ZZZ' ab/x'", "2016-11-03 UTC ab/x");
+    assertParsesLikeJoda("yyyy-MM-dd ZZZ' abcdefghijklmnopqrstuvwxyz/x'", "2016-11-03 UTC abcdefghijklmnopqrstuvwxyz/x");
+  }
+
+  @Test
+  public void unknownZonesFail() {
+    JodaParser parser = new JodaParser("yyyy-MM-dd HH:mm:ss ZZZ", null, "UTC");
+    for (String input : new String[] { "2016-11-03 21:10:57 Europe/Nowhere", "2016-11-03 21:10:57 ", "2016-11-03 21:10:57 Europe/Berlin!" }) {
+      try {
+        parser.parse(input);
+        fail("Parsed " + input);
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void yearlessTimesParseLikeJoda() {
+    JodaParser.setDefaultClock(() -> new DateTime(2016, 6, 1, 0, 0, DateTimeZone.UTC));
+    try {
+      JodaParser parser = new JodaParser("MMM dd HH:mm:ss", Locale.US, "Europe/Paris");
+      DateTimeFormatter joda = DateTimeFormat.forPattern("MMM dd HH:mm:ss").withLocale(Locale.US).withDefaultYear(2016).withZoneUTC();
+      DateTimeZone paris = DateTimeZone.forID("Europe/Paris");
+      DateTimeZone newYork = DateTimeZone.forID("America/New_York");
+      // The second one is repeated when clocks go back
+      for (String input : new String[] { "Nov 03 21:10:57", "Oct 30 02:30:00", "Feb 29 12:00:00" }) {
+        assertEquals(input, joda.parseLocalDateTime(input).toDateTime(paris).getMillis(), parser.parse(input).getMillis());
+        assertEquals(input, joda.parseLocalDateTime(input).toDateTime(newYork).getMillis(), parser.parseWithTimeZone(input, "America/New_York").getMillis());
+      }
+      // Skipped when clocks go forward
+      try {
+        parser.parse("Mar 27 02:30:00");
+        fail("Parsed a time that does not exist");
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+
+      JodaParser zoned = new JodaParser("MMM dd HH:mm:ss Z", Locale.US, "Europe/Paris");
+      assertEquals(new DateTime(2016, 11, 3, 20, 10, 57, DateTimeZone.UTC).getMillis(), zoned.parse("Nov 03 21:10:57 +0100").getMillis());
+    } finally {
+      JodaParser.setDefaultClock(JodaParser.wallClock);
+    }
+  }
+
+  private static void assertFailsLikeJoda(String pattern, String... inputs) {
+    JodaParser parser = new JodaParser(pattern, null, "UTC");
+    DateTimeFormatter joda = DateTimeFormat.forPattern(pattern).withZoneUTC();
+    for (String input : inputs) {
+      for (Runnable parse : new Runnable[] { () -> joda.parseMillis(input), () -> parser.parse(input) }) {
+        try {
+          parse.run();
+          fail("Parsed " + input);
+        } catch (IllegalArgumentException e) {
+          // expected
+        }
+      }
+    }
+  }
+
+  private static void assertParsesLikeJoda(String pattern, String... inputs) {
+    JodaParser parser = new JodaParser(pattern, null, "UTC");
+    DateTimeFormatter joda = DateTimeFormat.forPattern(pattern).withZoneUTC();
+    for (String input : inputs) {
+      assertEquals(input, joda.parseMillis(input), parser.parse(input).getMillis());
+      assertEquals(input, joda.parseMillis(input), parser.parse(new StringBuilder(input)).getMillis());
+    }
+  }
 }
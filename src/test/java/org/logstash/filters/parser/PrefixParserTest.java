@@ -0,0 +1,57 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters.parser;
+
+import org.junit.Test;
+
+import java.text.ParsePosition;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+public class PrefixParserTest {
+  @Test
+  public void parsesTheTimestampAtTheStartOfALine() {
+    CasualISO8601Parser iso = new CasualISO8601Parser("UTC");
+    assertPrefix(iso, "2016-11-03T21:10:57.123Z GET /index.html", 0, "2016-11-03T21:10:57.123Z");
+    assertPrefix(iso, "2016-11-03T21:10:57+01:00\tGET", 0, "2016-11-03T21:10:57+01:00");
+    assertPrefix(iso, "2016-11-03T21:10:57", 0, "2016-11-03T21:10:57");
+    // Not the canonical shape, read by the formatter that reads the most
+    assertPrefix(iso, "2016-11-03 21:10:57.123 GET", 0, "2016-11-03 21:10:57.123");
+    assertPrefix(iso, "2016-11-03T21:10:57,5Z GET", 0, "2016-11-03T21:10:57,5Z");
+
+    JodaParser compact = new JodaParser("yyyyMMddHHmmss", Locale.ENGLISH, "UTC");
+    assertPrefix(compact, "20161103211057 GET", 0, "20161103211057");
+    JodaParser pattern = new JodaParser("dd/MMM/yyyy:HH:mm:ss Z", Locale.ENGLISH, "UTC");
+    assertPrefix(pattern, "[03/Nov/2016:21:10:57 +0100] \"GET /\"", 1, "03/Nov/2016:21:10:57 +0100");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void failsWithoutATimestampAtTheOffset() {
+    new CasualISO8601Parser("UTC").parsePrefix("GET 2016-11-03T21:10:57Z", new ParsePosition(0));
+  }
+
+  // The prefix parses like the timestamp alone, and ends where it does
+  private static void assertPrefix(PrefixParser parser, String line, int offset, String timestamp) {
+    ParsePosition position = new ParsePosition(offset);
+    assertEquals(line, parser.parse(timestamp), parser.parsePrefix(line, position));
+    assertEquals(line, offset + timestamp.length(), position.getIndex());
+  }
+}
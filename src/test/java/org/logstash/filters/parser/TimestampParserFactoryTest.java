@@ -0,0 +1,71 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters.parser;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TimestampParserFactoryTest {
+  @Test
+  public void sharesParsersWithTheSameConfig() {
+    TimestampParser parser = TimestampParserFactory.makeParser("yyyy-MM-dd HH:mm:ss", "en", "UTC");
+    assertSame(parser, TimestampParserFactory.makeParser("yyyy-MM-dd HH:mm:ss", "en", "UTC"));
+    assertNotSame(parser, TimestampParserFactory.makeParser("yyyy-MM-dd HH:mm:ss", "en", "Europe/Paris"));
+    assertNotSame(parser, TimestampParserFactory.makeParser("yyyy-MM-dd HH:mm:ss", "fr", "UTC"));
+    assertSame(TimestampParserFactory.makeParser("ISO8601", "en", "%{tz}"), TimestampParserFactory.makeParser("ISO8601", "en", "%{other_tz}"));
+  }
+
+  @Test
+  public void buildsUnsharedParsersOutsideTheRegistry() {
+    TimestampParser parser = TimestampParserFactory.makeParser("yyyy-MM-dd HH:mm", "en", "UTC");
+    TimestampParser unshared = TimestampParserFactory.makeParser("yyyy-MM-dd HH:mm", "en", "UTC", false);
+    assertNotSame(parser, unshared);
+    assertNotSame(unshared, TimestampParserFactory.makeParser("yyyy-MM-dd HH:mm", "en", "UTC", false));
+    assertSame(parser, TimestampParserFactory.makeParser("yyyy-MM-dd HH:mm", "en", "UTC"));
+  }
+
+  @Test
+  public void buildsNewParsersForANewClock() {
+    TimestampParser parser = TimestampParserFactory.makeParser("MMM dd HH:mm:ss", "en", "UTC");
+    JodaParser.setDefaultClock(() -> new DateTime(2016, 3, 29, 23, 59, 50));
+    try {
+      assertNotSame(parser, TimestampParserFactory.makeParser("MMM dd HH:mm:ss", "en", "UTC"));
+    } finally {
+      JodaParser.setDefaultClock(JodaParser.wallClock);
+    }
+    assertSame(parser, TimestampParserFactory.makeParser("MMM dd HH:mm:ss", "en", "UTC"));
+  }
+
+  @Test
+  public void dropsParsersThatAreNoLongerUsed() throws InterruptedException {
+    for (int i = 0; i < 100; i++) {
+      TimestampParserFactory.makeParser("yyyy-MM-dd'T'HH:mm:ss '" + i + "'", "en", "UTC");
+    }
+    for (int attempt = 0; attempt < 50 && TimestampParserFactory.sharedParserCount() >= 100; attempt++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertTrue(TimestampParserFactory.sharedParserCount() < 100);
+  }
+}
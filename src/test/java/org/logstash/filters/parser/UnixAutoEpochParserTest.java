@@ -0,0 +1,85 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters.parser;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+
+public class UnixAutoEpochParserTest {
+  private static final long EXPECTED = 1478207457123456789L;
+  private static final long EXPECTED_MICROS = 1478207457123456000L;
+  private static final long EXPECTED_MILLIS = 1478207457123000000L;
+
+  private final UnixAutoEpochParser parser = new UnixAutoEpochParser();
+
+  @Test
+  public void detectsTheUnitOfText() {
+    assertEquals(1478207457000000000L, parser.parseNanos("1478207457"));
+    assertEquals(EXPECTED, parser.parseNanos("1478207457.123456789"));
+    assertEquals(EXPECTED_MILLIS, parser.parseNanos("1478207457123"));
+    assertEquals(EXPECTED_MICROS, parser.parseNanos("1478207457123.456"));
+    assertEquals(EXPECTED_MICROS, parser.parseNanos("1478207457123456"));
+    assertEquals(EXPECTED, parser.parseNanos("1478207457123456789"));
+    assertEquals(EXPECTED, parser.parseNanos("1478207457.1234567891234"));
+    assertEquals(-1500000000L, parser.parseNanos("-1.5"));
+  }
+
+  @Test
+  public void detectsTheUnitOfNumbers() {
+    assertEquals(1478207457000000000L, parser.parseNanos(1478207457L));
+    assertEquals(EXPECTED_MILLIS, parser.parseNanos(1478207457123L));
+    assertEquals(EXPECTED_MICROS, parser.parseNanos(1478207457123456L));
+    assertEquals(EXPECTED, parser.parseNanos(1478207457123456789L));
+    assertEquals(EXPECTED_MICROS, parser.parseNanos(1478207457.123456D));
+    assertEquals(EXPECTED, parser.parseNanos(new BigDecimal("1478207457.123456789")));
+    assertEquals(EXPECTED_MICROS, parser.parseNanos(new BigDecimal("1478207457123.456")));
+  }
+
+  @Test
+  public void truncatesToMillisecondsForInstants() {
+    assertEquals(1478207457123L, parser.parse("1478207457123456789").getMillis());
+    assertEquals(-1L, parser.parse("-0.0005").getMillis());
+  }
+
+  @Test
+  public void scalesFixedUnits() {
+    assertEquals(EXPECTED_MICROS, new ScaledEpochParser(1_000).parseNanos("1478207457123456"));
+    assertEquals(EXPECTED, new ScaledEpochParser(1).parseNanos("1478207457123456789"));
+    assertEquals(EXPECTED_MICROS, new ScaledEpochParser(1_000).parseNanos(new BigDecimal("1478207457123456")));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsGarbage() {
+    parser.parseNanos("1478207457.");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsOverflow() {
+    parser.parseNanos("99999999999999999999");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsMicrosecondsBeyondTheNanosecondRange() {
+    new ScaledEpochParser(1_000).parseNanos(Long.MAX_VALUE / 100);
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.logstash.filters.parser;
+
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ZonePreloadTest {
+  @Test
+  public void keepsTheZonesThatJodaLoads() {
+    ZonePreload.preload(Arrays.asList("Europe/Paris", "America/Los_Angeles", "Not/A_Zone", null));
+    assertSame(DateTimeZone.forID("Europe/Paris"), ZonePreload.forID("Europe/Paris"));
+    assertSame(DateTimeZone.forID("America/Los_Angeles"), ZonePreload.forID("America/Los_Angeles"));
+    assertEquals(DateTimeZone.forID("+01:00"), ZonePreload.forID("+01:00"));
+    assertEquals(0, ZonePreload.preload(Arrays.asList("Europe/Paris", "Not/A_Zone")));
+
+    ZonePreload.preloadAll();
+    assertTrue(ZonePreload.size() >= DateTimeZone.getAvailableIDs().size());
+    assertEquals(0, ZonePreload.preloadAll());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsUnknownZonesLikeJoda() {
+    ZonePreload.forID("Not/A_Zone");
+  }
+}